@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Replays the range updates of a diff onto the old list, the way RecyclerView applies them, and
+    checks that the result is the new list.  A position that is off by one here makes RecyclerView
+    throw "Inconsistency detected" in the forecast list.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long FIRST_DATE = 1420070400000L;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    public void testNoChange() {
+        List<ForecastItem> items = week(0);
+        assertTrue("Error: found updates between equal lists",
+                ForecastDiff.calculate(items, week(0)).isEmpty());
+    }
+
+    public void testInsert() {
+        List<ForecastItem> oldItems = days(1, 2, 4, 5);
+        assertReplays(oldItems, days(0, 1, 2, 4, 5), 1);
+        assertReplays(oldItems, days(1, 2, 3, 4, 5), 1);
+        assertReplays(oldItems, days(1, 2, 4, 5, 6), 1);
+    }
+
+    public void testRemove() {
+        List<ForecastItem> oldItems = days(0, 1, 2, 3, 4);
+        assertReplays(oldItems, days(1, 2, 3, 4), 1);
+        assertReplays(oldItems, days(0, 1, 3, 4), 1);
+        assertReplays(oldItems, days(0, 1, 2, 3), 1);
+    }
+
+    public void testChange() {
+        List<ForecastItem> oldItems = days(0, 1, 2, 3, 4);
+        assertReplays(oldItems, changed(oldItems, 0), 1);
+        assertReplays(oldItems, changed(oldItems, 2), 1);
+        assertReplays(oldItems, changed(oldItems, 4), 1);
+    }
+
+    public void testDetailOnlyChangeIsNotDispatched() {
+        List<ForecastItem> oldItems = days(0, 1, 2);
+        List<ForecastItem> newItems = new ArrayList<ForecastItem>(oldItems);
+        ForecastItem item = oldItems.get(1);
+        newItems.set(1, new ForecastItem(item.date, item.weatherId, item.description, item.high,
+                item.low, item.humidity + 1, item.pressure, item.windSpeed, item.degrees));
+        assertTrue("Error: dispatched a change the list doesn't show",
+                ForecastDiff.calculate(oldItems, newItems).isEmpty());
+    }
+
+    public void testCoalescesRuns() {
+        List<ForecastItem> oldItems = days(0, 1, 2, 3, 4, 5, 6);
+        assertReplays(oldItems, days(0, 4, 5, 6), 1);
+        assertReplays(oldItems, days(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), 1);
+        assertReplays(days(0, 4), days(0, 1, 2, 3, 4), 1);
+        assertReplays(oldItems, changed(changed(changed(oldItems, 2), 3), 4), 1);
+        // Changes on either side of an unchanged day stay separate
+        assertReplays(oldItems, changed(changed(oldItems, 2), 4), 2);
+    }
+
+    public void testMixedUpdates() {
+        List<ForecastItem> oldItems = days(0, 1, 2, 3, 5, 6, 7);
+        List<ForecastItem> newItems = changed(days(1, 2, 3, 4, 5, 8, 9), 2);
+        // Remove day 0, change day 3, insert day 4, remove days 6 and 7, insert days 8 and 9
+        assertReplays(oldItems, newItems, 5);
+        assertReplays(newItems, oldItems, 5);
+    }
+
+    public void testDayRollover() {
+        // Midnight passed and the sync fetched a new last day
+        assertReplays(week(0), week(1), 2);
+        // The list was not refreshed for a few days
+        assertReplays(week(0), week(3), 2);
+        // Nothing in common
+        assertReplays(week(0), week(10), 2);
+    }
+
+    public void testEmptyLists() {
+        List<ForecastItem> empty = new ArrayList<ForecastItem>();
+        assertReplays(empty, week(0), 1);
+        assertReplays(week(0), empty, 1);
+        assertTrue("Error: found updates between empty lists",
+                ForecastDiff.calculate(empty, empty).isEmpty());
+    }
+
+    /*
+        Applies the diff's updates to a copy of oldItems and checks that it then shows newItems,
+        and that the diff needed the expected number of range updates.
+     */
+    private static void assertReplays(List<ForecastItem> oldItems, List<ForecastItem> newItems,
+                                      int expectedUpdates) {
+        ReplayObserver observer = new ReplayObserver(oldItems, newItems);
+        RecyclerView.Adapter<RecyclerView.ViewHolder> adapter = new EmptyAdapter();
+        adapter.registerAdapterDataObserver(observer);
+        ForecastDiff.calculate(oldItems, newItems).dispatchTo(adapter);
+
+        assertEquals("Error: wrong size after replaying updates",
+                newItems.size(), observer.items.size());
+        for (int i = 0; i < newItems.size(); i++) {
+            assertTrue("Error: wrong item at position " + i + " after replaying updates",
+                    newItems.get(i).hasSameContents(observer.items.get(i)));
+        }
+        assertEquals("Error: wrong number of range updates", expectedUpdates, observer.updates);
+    }
+
+    private static List<ForecastItem> week(int firstDay) {
+        int[] days = new int[7];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = firstDay + i;
+        }
+        return days(days);
+    }
+
+    private static List<ForecastItem> days(int... days) {
+        List<ForecastItem> items = new ArrayList<ForecastItem>(days.length);
+        for (int day : days) {
+            items.add(new ForecastItem(FIRST_DATE + day * DAY_IN_MILLIS, 800, "Clear",
+                    20 + day, 10 + day, 50, 1000, 5, 90));
+        }
+        return items;
+    }
+
+    /*
+        Returns a copy of items with the one at the position showing different weather.
+     */
+    private static List<ForecastItem> changed(List<ForecastItem> items, int position) {
+        List<ForecastItem> changed = new ArrayList<ForecastItem>(items);
+        ForecastItem item = items.get(position);
+        changed.set(position, new ForecastItem(item.date, 500, "Rain", item.high - 5,
+                item.low - 5, item.humidity, item.pressure, item.windSpeed, item.degrees));
+        return changed;
+    }
+
+    /*
+        Updates are dispatched from the first position to the last, so everything before an
+        update's position is final by then, and the position in the list being updated is also the
+        position of the inserted or changed items in the new list.
+     */
+    private static class ReplayObserver extends RecyclerView.AdapterDataObserver {
+        final List<ForecastItem> items;
+        final List<ForecastItem> newItems;
+        int updates;
+
+        ReplayObserver(List<ForecastItem> oldItems, List<ForecastItem> newItems) {
+            this.items = new ArrayList<ForecastItem>(oldItems);
+            this.newItems = newItems;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            updates++;
+            assertTrue("Error: inserted at " + positionStart + " past the end",
+                    positionStart <= items.size());
+            items.addAll(positionStart,
+                    newItems.subList(positionStart, positionStart + itemCount));
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            updates++;
+            assertTrue("Error: removed " + itemCount + " at " + positionStart + " past the end",
+                    positionStart + itemCount <= items.size());
+            items.subList(positionStart, positionStart + itemCount).clear();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            updates++;
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                assertFalse("Error: changed position " + i + " that shows the same weather",
+                        items.get(i).hasSameContents(newItems.get(i)));
+                items.set(i, newItems.get(i));
+            }
+        }
+    }
+
+    private static class EmptyAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.Locale;
+
+/*
+    Checks that the table-driven condition lookups return exactly what the original if/else
+    chains in Utility returned, for every code in and around the OpenWeatherMap range.  The
+    reference methods at the bottom are those chains as they were before the table replaced them.
+ */
+public class TestWeatherConditionTable extends AndroidTestCase {
+
+    private static final int FIRST_CODE = 0;
+    private static final int LAST_CODE = 1100;
+
+    private static final String TEST_ART_PACK = "http://example.com/art_%s.png";
+    private static final String OTHER_ART_PACK = "http://example.com/other/%s.png";
+
+    public void testIconResources() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            assertEquals("Error: icon mismatch for code " + code,
+                    referenceIcon(code), Utility.getIconResourceForWeatherCondition(code));
+        }
+    }
+
+    public void testArtResources() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            assertEquals("Error: art mismatch for code " + code,
+                    referenceArt(code), Utility.getArtResourceForWeatherCondition(code));
+        }
+    }
+
+    public void testImageUrls() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            assertEquals("Error: image url mismatch for code " + code,
+                    referenceImageUrl(code), Utility.getImageUrlForWeatherCondition(code));
+        }
+    }
+
+    public void testStrings() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            int stringId = referenceString(code);
+            String expected = stringId == 0
+                    ? mContext.getString(R.string.condition_unknown, code)
+                    : mContext.getString(stringId);
+            assertEquals("Error: string mismatch for code " + code,
+                    expected, Utility.getStringForWeatherCondition(mContext, code));
+        }
+    }
+
+    public void testArtUrlsFollowArtPackChanges() {
+        // Alternate between packs so the expanded urls have to be rebuilt between passes
+        String[] packs = {TEST_ART_PACK, OTHER_ART_PACK, TEST_ART_PACK};
+        for (String pack : packs) {
+            for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+                assertEquals("Error: art url mismatch for code " + code + " in " + pack,
+                        referenceArtUrl(pack, code), WeatherConditionTable.getArtUrl(pack, code));
+            }
+        }
+    }
+
+    private static int referenceIcon(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int referenceArt(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String referenceArtUrl(String formatArtUrl, int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, formatArtUrl, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, formatArtUrl, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, formatArtUrl, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, formatArtUrl, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, formatArtUrl, "clouds");
+        }
+        return null;
+    }
+
+    private static String referenceImageUrl(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+
+    /*
+        Returns the string resource the original switch picked, or 0 where it fell through to
+        R.string.condition_unknown.
+     */
+    private static int referenceString(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.string.condition_3xx;
+        }
+        switch (weatherId) {
+            case 500:
+                return R.string.condition_500;
+            case 501:
+                return R.string.condition_501;
+            case 502:
+                return R.string.condition_502;
+            case 503:
+                return R.string.condition_503;
+            case 504:
+                return R.string.condition_504;
+            case 511:
+                return R.string.condition_511;
+            case 520:
+                return R.string.condition_520;
+            case 531:
+                return R.string.condition_531;
+            case 600:
+                return R.string.condition_600;
+            case 601:
+                return R.string.condition_601;
+            case 602:
+                return R.string.condition_602;
+            case 611:
+                return R.string.condition_611;
+            case 612:
+                return R.string.condition_612;
+            case 615:
+                return R.string.condition_615;
+            case 616:
+                return R.string.condition_616;
+            case 620:
+                return R.string.condition_620;
+            case 621:
+                return R.string.condition_621;
+            case 622:
+                return R.string.condition_622;
+            case 701:
+                return R.string.condition_701;
+            case 711:
+                return R.string.condition_711;
+            case 721:
+                return R.string.condition_721;
+            case 731:
+                return R.string.condition_731;
+            case 741:
+                return R.string.condition_741;
+            case 751:
+                return R.string.condition_751;
+            case 761:
+                return R.string.condition_761;
+            case 762:
+                return R.string.condition_762;
+            case 771:
+                return R.string.condition_771;
+            case 781:
+                return R.string.condition_781;
+            case 800:
+                return R.string.condition_800;
+            case 801:
+                return R.string.condition_801;
+            case 802:
+                return R.string.condition_802;
+            case 803:
+                return R.string.condition_803;
+            case 804:
+                return R.string.condition_804;
+            case 900:
+                return R.string.condition_900;
+            case 901:
+                return R.string.condition_901;
+            case 902:
+                return R.string.condition_902;
+            case 903:
+                return R.string.condition_903;
+            case 904:
+                return R.string.condition_904;
+            case 905:
+                return R.string.condition_905;
+            case 906:
+                return R.string.condition_906;
+            case 951:
+                return R.string.condition_951;
+            case 952:
+                return R.string.condition_952;
+            case 953:
+                return R.string.condition_953;
+            case 954:
+                return R.string.condition_954;
+            case 955:
+                return R.string.condition_955;
+            case 956:
+                return R.string.condition_956;
+            case 957:
+                return R.string.condition_957;
+            case 958:
+                return R.string.condition_958;
+            case 959:
+                return R.string.condition_959;
+            case 960:
+                return R.string.condition_960;
+            case 961:
+                return R.string.condition_961;
+            case 962:
+                return R.string.condition_962;
+            default:
+                return 0;
+        }
+    }
+}
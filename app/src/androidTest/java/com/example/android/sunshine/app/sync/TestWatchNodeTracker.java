@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+    Walks the tracker through watches connecting, acknowledging and disconnecting, since its
+    answers decide whether the phone pushes the weather at all.
+ */
+public class TestWatchNodeTracker extends AndroidTestCase {
+
+    private static final String NODE_A = "node-a";
+    private static final String NODE_B = "node-b";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestWatchWeatherPublisher.clearWatchState(
+                PreferenceManager.getDefaultSharedPreferences(mContext));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestWatchWeatherPublisher.clearWatchState(
+                PreferenceManager.getDefaultSharedPreferences(mContext));
+        super.tearDown();
+    }
+
+    public void testUnknownUntilReported() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        assertFalse("Error: watches known before any were reported", tracker.isKnown());
+        assertFalse(tracker.hasConnectedNodes());
+
+        tracker.setConnectedNodes(Collections.<String>emptySet());
+        assertTrue("Error: an empty report left the watches unknown", tracker.isKnown());
+        assertFalse(tracker.hasConnectedNodes());
+        // Another instance, as the sync adapter and the listener service each make their own
+        assertTrue(new WatchNodeTracker(mContext).isKnown());
+    }
+
+    public void testSetConnectedNodesReturnsNewNodes() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        assertEquals(nodes(NODE_A), tracker.setConnectedNodes(nodes(NODE_A)));
+        assertEquals(nodes(NODE_B), tracker.setConnectedNodes(nodes(NODE_A, NODE_B)));
+        assertTrue("Error: a watch that stayed connected was reported as new",
+                tracker.setConnectedNodes(nodes(NODE_B)).isEmpty());
+        assertTrue(tracker.hasConnectedNodes());
+        assertEquals(nodes(NODE_A), tracker.setConnectedNodes(nodes(NODE_A, NODE_B)));
+    }
+
+    public void testAllNodesShow() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        assertFalse("Error: a version is shown with no watch connected",
+                tracker.allNodesShow(1));
+
+        tracker.setConnectedNodes(nodes(NODE_A, NODE_B));
+        assertFalse(tracker.allNodesShow(1));
+        tracker.acknowledge(NODE_A, 1);
+        assertFalse("Error: a version is shown before every watch acknowledged it",
+                tracker.allNodesShow(1));
+        tracker.acknowledge(NODE_B, 1);
+        assertTrue(tracker.allNodesShow(1));
+        assertFalse("Error: a newer version is shown", tracker.allNodesShow(2));
+
+        tracker.acknowledge(NODE_A, 2);
+        assertFalse(tracker.allNodesShow(1));
+        assertFalse(tracker.allNodesShow(2));
+
+        // The watch still on the old version goes away, and comes back
+        tracker.setConnectedNodes(nodes(NODE_A));
+        assertTrue(tracker.allNodesShow(2));
+        tracker.setConnectedNodes(nodes(NODE_A, NODE_B));
+        assertFalse("Error: a reconnected watch was taken to show the newer version",
+                tracker.allNodesShow(2));
+    }
+
+    public void testPushPendingCoalesces() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        assertFalse("Error: a push is pending before any was skipped", tracker.takePushPending());
+
+        tracker.setPushPending();
+        tracker.setPushPending();
+        tracker.setPushPending();
+        assertTrue(tracker.takePushPending());
+        assertFalse("Error: skipped pushes were not coalesced into one",
+                tracker.takePushPending());
+    }
+
+    private static Set<String> nodes(String... nodeIds) {
+        return new HashSet<>(Arrays.asList(nodeIds));
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.WeatherDates;
+import com.google.android.gms.wearable.PutDataMapRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.TimeZone;
+
+/*
+    Checks when the publisher decides the watch already has the weather, by what was sent and by
+    what the watches acknowledged, which is what keeps it from pushing the same payload after
+    every sync.  Runs against a test location in the provider, with the units and art pack the
+    user picked put back afterwards.
+ */
+public class TestWatchWeatherPublisher extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99705";
+    private static final int DAYS = 3;
+    private static final String NODE_A = "node-a";
+    private static final String NODE_B = "node-b";
+
+    private SharedPreferences mPrefs;
+    private String mSavedLocation;
+    private String mSavedUnits;
+    private String mSavedArtPack;
+    private long mLocationId;
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mSavedLocation = mPrefs.getString(mContext.getString(R.string.pref_location_key), null);
+        mSavedUnits = mPrefs.getString(mContext.getString(R.string.pref_units_key), null);
+        mSavedArtPack = mPrefs.getString(mContext.getString(R.string.pref_art_pack_key), null);
+        // The bundled art pack, so that no art is downloaded
+        mPrefs.edit()
+                .putString(mContext.getString(R.string.pref_location_key), TEST_LOCATION)
+                .remove(mContext.getString(R.string.pref_units_key))
+                .remove(mContext.getString(R.string.pref_art_pack_key))
+                .commit();
+        clearWatchState(mPrefs);
+        deleteTestLocation();
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        mLocationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues weather = new ContentValues();
+            weather.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+            weather.put(WeatherEntry.COLUMN_DATE,
+                    WeatherDates.addDays(mToday, i, TimeZone.getDefault()));
+            weather.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            weather.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            weather.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weather.put(WeatherEntry.COLUMN_MAX_TEMP, 24 + i);
+            weather.put(WeatherEntry.COLUMN_MIN_TEMP, 18 + i);
+            weather.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            weather.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weather.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weather);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteTestLocation();
+        clearWatchState(mPrefs);
+        mPrefs.edit()
+                .putString(mContext.getString(R.string.pref_location_key), mSavedLocation)
+                .putString(mContext.getString(R.string.pref_units_key), mSavedUnits)
+                .putString(mContext.getString(R.string.pref_art_pack_key), mSavedArtPack)
+                .commit();
+        super.tearDown();
+    }
+
+    public void testNoPayloadWithoutToday() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[] {Long.toString(mLocationId), Long.toString(mToday)});
+        assertNull("Error: built a payload without today's weather",
+                new WatchWeatherPublisher(mContext).buildRequest());
+    }
+
+    public void testSkipsPayloadSentBefore() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        WatchWeatherPublisher publisher = new WatchWeatherPublisher(mContext);
+        assertNotNull(publisher.buildRequest());
+        assertFalse("Error: skipped a payload that was never sent",
+                publisher.isShown(tracker, publisher.getSentFingerprint()));
+        publisher.setSent();
+
+        // The next sync, with the same forecast
+        publisher = new WatchWeatherPublisher(mContext);
+        assertNotNull(publisher.buildRequest());
+        assertTrue("Error: sent the same payload again",
+                publisher.isShown(tracker, publisher.getSentFingerprint()));
+    }
+
+    public void testSendsChangedForecast() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        WatchWeatherPublisher publisher = new WatchWeatherPublisher(mContext);
+        assertNotNull(publisher.buildRequest());
+        publisher.setSent();
+
+        // A day of the forecast strip changes, today doesn't
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, 500);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[] {Long.toString(mLocationId),
+                        Long.toString(WeatherDates.addDays(mToday, 2, TimeZone.getDefault()))});
+        publisher = new WatchWeatherPublisher(mContext);
+        assertNotNull(publisher.buildRequest());
+        assertFalse("Error: skipped a changed forecast",
+                publisher.isShown(tracker, publisher.getSentFingerprint()));
+    }
+
+    public void testSendsChangedUnits() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        WatchWeatherPublisher publisher = new WatchWeatherPublisher(mContext);
+        assertNotNull(publisher.buildRequest());
+        publisher.setSent();
+
+        mPrefs.edit().putString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_imperial)).commit();
+        publisher = new WatchWeatherPublisher(mContext);
+        assertNotNull(publisher.buildRequest());
+        assertFalse("Error: skipped a payload in other units",
+                publisher.isShown(tracker, publisher.getSentFingerprint()));
+    }
+
+    public void testSkipsPayloadEveryWatchShows() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        tracker.setConnectedNodes(new HashSet<>(Arrays.asList(NODE_A, NODE_B)));
+        WatchWeatherPublisher publisher = new WatchWeatherPublisher(mContext);
+        PutDataMapRequest request = publisher.buildRequest();
+        assertNotNull(request);
+        long version = request.getDataMap().getLong(WatchWeatherPublisher.VERSION_KEY);
+
+        tracker.acknowledge(NODE_A, version);
+        assertFalse("Error: skipped a payload one watch doesn't show",
+                publisher.isShown(tracker, publisher.getSentFingerprint()));
+        tracker.acknowledge(NODE_B, version);
+        assertTrue("Error: sent a payload every watch shows",
+                publisher.isShown(tracker, publisher.getSentFingerprint()));
+    }
+
+    public void testQueuesOnePushWhileNoWatchIsConnected() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        tracker.setConnectedNodes(Collections.<String>emptySet());
+        WatchWeatherPublisher publisher = new WatchWeatherPublisher(mContext);
+        // Returns before connecting to the Wearable API
+        publisher.publish();
+        publisher.publish();
+        assertNull("Error: sent with no watch connected", publisher.getSentFingerprint());
+        assertTrue("Error: no push queued for when a watch connects", tracker.takePushPending());
+        assertFalse("Error: queued more than one push", tracker.takePushPending());
+    }
+
+    public void testForgetSentState() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        WatchWeatherPublisher publisher = new WatchWeatherPublisher(mContext);
+        assertNotNull(publisher.buildRequest());
+        publisher.setSent();
+
+        WatchWeatherPublisher.forgetSentState(mContext);
+        assertFalse("Error: skipped a payload after the sent state was forgotten",
+                publisher.isShown(tracker, publisher.getSentFingerprint()));
+    }
+
+    private void deleteTestLocation() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " IN (SELECT " + LocationEntry._ID + " FROM "
+                        + LocationEntry.TABLE_NAME + " WHERE "
+                        + LocationEntry.COLUMN_LOCATION_SETTING + " = ?)",
+                new String[] {TEST_LOCATION});
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[] {TEST_LOCATION});
+    }
+
+    /*
+        Removes what the publisher and WatchNodeTracker keep, which all starts with "watch_".
+     */
+    static void clearWatchState(SharedPreferences prefs) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String key : prefs.getAll().keySet()) {
+            if (key.startsWith("watch_")) {
+                editor.remove(key);
+            }
+        }
+        editor.commit();
+    }
+}
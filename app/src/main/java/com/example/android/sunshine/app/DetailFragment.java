@@ -44,7 +44,8 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 /**
  * A placeholder fragment containing a simple view.
  */
-public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>,
+        ForecastRepository.Listener {
 
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
@@ -55,6 +56,11 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private String mForecast;
     private Uri mUri;
     private boolean mTransitionAnimation;
+    // Set when the hosting activity shares its forecast, which lets us skip our own query
+    private ForecastRepository mRepository;
+    private ForecastItem mItem;
+    // Set while our own loader binds the day, when repository changes are none of our business
+    private boolean mLoadingFromDatabase;
 
     private static final int DETAIL_LOADER = 0;
 
@@ -153,10 +159,25 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        mRepository = ForecastRepository.from(getActivity());
+        if (null != mRepository) {
+            mRepository.addListener(this);
+        }
+        if (!showItemFromRepository()) {
+            mLoadingFromDatabase = true;
+            getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        }
         super.onActivityCreated(savedInstanceState);
     }
 
+    @Override
+    public void onDestroyView() {
+        if (null != mRepository) {
+            mRepository.removeListener(this);
+        }
+        super.onDestroyView();
+    }
+
     void onLocationChanged( String newLocation ) {
         // replace the uri, since the location has changed
         Uri uri = mUri;
@@ -164,8 +185,57 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
             mUri = updatedUri;
-            getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+            if (showItemFromRepository()) {
+                // Don't let a query for the old location bind over the day just shown
+                mLoadingFromDatabase = false;
+                getLoaderManager().destroyLoader(DETAIL_LOADER);
+            } else {
+                loadFromDatabase();
+            }
+        }
+    }
+
+    @Override
+    public void onForecastChanged() {
+        if (mLoadingFromDatabase) {
+            return;
+        }
+        ForecastItem item = getItemFromRepository();
+        if (null == item) {
+            // The forecast we were showing from was cleared, so query the day ourselves
+            loadFromDatabase();
+        } else if (null == mItem || !item.hasSameDetails(mItem)) {
+            // The list reloads whenever anything in the provider changes, so only rebind if our
+            // day actually differs.
+            showItem(item);
+        }
+    }
+
+    private void loadFromDatabase() {
+        mLoadingFromDatabase = true;
+        getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+    }
+
+    private ForecastItem getItemFromRepository() {
+        if (null == mRepository || null == mUri) {
+            return null;
+        }
+        return mRepository.getItem(WeatherEntry.getLocationSettingFromUri(mUri),
+                WeatherEntry.getDateFromUri(mUri));
+    }
+
+    /**
+     * Shows the day from the activity's shared forecast, if it has already been loaded.
+     *
+     * @return false if the day still has to be queried.
+     */
+    private boolean showItemFromRepository() {
+        ForecastItem item = getItemFromRepository();
+        if (null == item) {
+            return false;
         }
+        showItem(item);
+        return true;
     }
 
     @Override
@@ -192,78 +262,85 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         if (data != null && data.moveToFirst()) {
-            ViewParent vp = getView().getParent();
-            if ( vp instanceof CardView ) {
-                ((View)vp).setVisibility(View.VISIBLE);
-            }
+            bindItem(new ForecastItem(
+                    data.getLong(COL_WEATHER_DATE),
+                    data.getInt(COL_WEATHER_CONDITION_ID),
+                    data.getString(COL_WEATHER_DESC),
+                    data.getDouble(COL_WEATHER_MAX_TEMP),
+                    data.getDouble(COL_WEATHER_MIN_TEMP),
+                    data.getFloat(COL_WEATHER_HUMIDITY),
+                    data.getFloat(COL_WEATHER_PRESSURE),
+                    data.getFloat(COL_WEATHER_WIND_SPEED),
+                    data.getFloat(COL_WEATHER_DEGREES)));
+        }
+        onItemShown();
+    }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
+    private void showItem(ForecastItem item) {
+        bindItem(item);
+        onItemShown();
+    }
 
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-            } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
-                        .crossFade()
-                        .into(mIconView);
-            }
+    private void bindItem(ForecastItem item) {
+        mItem = item;
+        ViewParent vp = getView().getParent();
+        if ( vp instanceof CardView ) {
+            ((View)vp).setVisibility(View.VISIBLE);
+        }
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
-            mDateView.setText(dateText);
-
-            // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
-            mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
-
-            // For accessibility, add a content description to the icon field. Because the ImageView
-            // is independently focusable, it's better to have a description of the image. Using
-            // null is appropriate when the image is purely decorative or when the image already
-            // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-            mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
-            mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-            mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
-            mWindLabelView.setContentDescription(mWindView.getContentDescription());
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
-            mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
-            mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+        int weatherId = item.weatherId;
 
+        if ( Utility.usingLocalGraphics(getActivity()) ) {
+            mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
+        } else {
+            // Use weather art image
+            WeatherArtService.getInstance(getActivity())
+                    .load(Glide.with(this), weatherId)
+                    .error(Utility.getArtResourceForWeatherCondition(weatherId))
+                    .crossFade()
+                    .into(mIconView);
         }
+
+        // Update views for day of week and date
+        String dateText = Utility.getFullFriendlyDayString(getActivity(), item.date);
+        mDateView.setText(dateText);
+
+        // Get description from weather condition ID
+        String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
+        mDescriptionView.setText(description);
+        mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
+
+        // For accessibility, add a content description to the icon field. Because the ImageView
+        // is independently focusable, it's better to have a description of the image. Using
+        // null is appropriate when the image is purely decorative or when the image already
+        // has text describing it in the same UI component.
+        mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
+
+        String highString = Utility.formatTemperature(getActivity(), item.high);
+        mHighTempView.setText(highString);
+        mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
+
+        String lowString = Utility.formatTemperature(getActivity(), item.low);
+        mLowTempView.setText(lowString);
+        mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
+
+        mHumidityView.setText(getActivity().getString(R.string.format_humidity, item.humidity));
+        mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
+        mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
+
+        mWindView.setText(Utility.getFormattedWind(getActivity(), item.windSpeed, item.degrees));
+        mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
+        mWindLabelView.setContentDescription(mWindView.getContentDescription());
+
+        mPressureView.setText(getString(R.string.format_pressure, item.pressure));
+        mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
+        mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
+
+        // We still need this for the share intent
+        mForecast = String.format("%s - %s - %s/%s", dateText, description, item.high, item.low);
+    }
+
+    private void onItemShown() {
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
 
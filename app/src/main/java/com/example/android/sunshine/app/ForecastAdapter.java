@@ -17,6 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
@@ -32,11 +33,18 @@ import android.widget.TextView;
 import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ *
+ * Each new cursor is copied into {@link ForecastItem}s and compared with the rows already shown,
+ * so a sync that only changes a few days only rebinds those days.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+    private static final String LOG_TAG = ForecastAdapter.class.getSimpleName();
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -45,6 +53,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    private List<ForecastItem> mItems = Collections.emptyList();
+    // Everything besides the rows that changes what a bound row looks like.  When it changes,
+    // every row is rebound regardless of the diff.
+    private String mBindConfig;
+    // Incremented for every swapped cursor so that a diff finishing late can't overwrite newer data
+    private int mGeneration;
+    // Rows bound since the last update was applied; logged with the next update
+    private int mBindCount;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +89,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            mClickHandler.onClick(mItems.get(adapterPosition).date, this);
             mICM.onClick(this);
         }
     }
@@ -88,6 +105,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Dates are unique within the list, so they let the ItemChoiceManager follow the selected
+        // day as rows are inserted and removed around it.  This has to be set before the
+        // ItemChoiceManager registers its observer.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,9 +145,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        ForecastItem item = mItems.get(position);
+        int weatherId = item.weatherId;
         int defaultImage;
+        mBindCount++;
         boolean useLongToday;
 
         switch (getItemViewType(position)) {
@@ -142,19 +164,20 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         if ( Utility.usingLocalGraphics(mContext) ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+            WeatherArtService.getInstance(mContext)
+                    .load(Glide.with(mContext), weatherId)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        // the animator can use this to re-find the original view.  The date is used rather than
+        // the position because rows can now move without being rebound.
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + item.date);
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        // Read date from the row
+        long dateInMillis = item.date;
 
         // Find TextView and set formatted date on it
         forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
@@ -170,14 +193,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        // Read high temperature from the row
+        double high = item.high;
         String highString = Utility.formatTemperature(mContext, high);
         forecastAdapterViewHolder.mHighTempView.setText(highString);
         forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        // Read low temperature from the row
+        double low = item.low;
         String lowString = Utility.formatTemperature(mContext, low);
         forecastAdapterViewHolder.mLowTempView.setText(lowString);
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
@@ -208,16 +231,110 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mItems.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (position < 0 || position >= mItems.size()) {
+            return RecyclerView.NO_ID;
+        }
+        return mItems.get(position).date;
+    }
+
+    ForecastItem getItem(int position) {
+        return mItems.get(position);
+    }
+
+    /**
+     * @return the position of the row for the given date, or RecyclerView.NO_POSITION.
+     */
+    public int getPositionForDate(long date) {
+        for (int i = 0; i < mItems.size(); i++) {
+            if (mItems.get(i).date == date) {
+                return i;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    /**
+     * Shows rows that were saved earlier, until the first cursor arrives.  The cursor then
+     * replaces them through the normal diff, so only rows that changed since are rebound.
+     *
+     * @return true if the rows are being shown
+     */
+    boolean showSnapshot(List<ForecastItem> items) {
+        if (mCursor != null || !mItems.isEmpty() || items.isEmpty()) {
+            return false;
+        }
+        applyItems(items, buildBindConfig(), null);
+        return true;
     }
 
     public void swapCursor(Cursor newCursor) {
+        swapCursor(newCursor, ForecastItem.fromCursor(newCursor));
+    }
+
+    /**
+     * Same as {@link #swapCursor(Cursor)}, for callers that have already read the rows.
+     */
+    void swapCursor(Cursor newCursor, final List<ForecastItem> newItems) {
         mCursor = newCursor;
-        notifyDataSetChanged();
+        final String bindConfig = buildBindConfig();
+        final int generation = ++mGeneration;
+
+        // Nothing to compare against, or every row looks different anyway: just rebind.
+        if (mItems.isEmpty() || newItems.isEmpty() || !bindConfig.equals(mBindConfig)) {
+            applyItems(newItems, bindConfig, null);
+            return;
+        }
+
+        final List<ForecastItem> oldItems = mItems;
+        new AsyncTask<Void, Void, ForecastDiff>() {
+            @Override
+            protected ForecastDiff doInBackground(Void... params) {
+                return ForecastDiff.calculate(oldItems, newItems);
+            }
+
+            @Override
+            protected void onPostExecute(ForecastDiff diff) {
+                if (generation == mGeneration) {
+                    applyItems(newItems, bindConfig, diff);
+                }
+            }
+        }.execute();
+    }
+
+    private void applyItems(List<ForecastItem> newItems, String bindConfig, ForecastDiff diff) {
+        boolean firstRowChanged = !mItems.isEmpty() && !newItems.isEmpty()
+                && mItems.get(0).date != newItems.get(0).date;
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Forecast update: " + (diff == null ? "full rebind" : diff)
+                    + ", " + mBindCount + " rows bound since the previous update");
+        }
+        mBindCount = 0;
+        mItems = newItems;
+        mBindConfig = bindConfig;
+        if (diff == null) {
+            notifyDataSetChanged();
+        } else {
+            diff.dispatchTo(this);
+            // The first row may use the "today" layout, so a different day moving into it needs
+            // a new view holder even if its own contents didn't change.
+            if (firstRowChanged && mUseTodayLayout) {
+                notifyItemChanged(0);
+            }
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
+    private String buildBindConfig() {
+        // The current day is included because the "Today"/"Tomorrow" labels depend on it
+        return Utility.isMetric(mContext) + "|" + Utility.getPreferredArtPack(mContext) + "|"
+                + WeatherContract.normalizeDate(System.currentTimeMillis()) + "|" + mUseTodayLayout;
+    }
+
     public Cursor getCursor() {
         return mCursor;
     }
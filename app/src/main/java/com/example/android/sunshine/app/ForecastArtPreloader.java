@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Loads the remote art for the rows just past the edge of the forecast list before they are
+ * scrolled into view, so they can be bound from Glide's memory cache instead of showing the
+ * placeholder while the image downloads.
+ *
+ * The preload uses the same size and transformation as the list item ImageView, so it warms the
+ * exact memory and disk cache entries that binding the row will look up.  Art is shared by
+ * condition, so each distinct URL is only requested once per size.
+ */
+class ForecastArtPreloader extends RecyclerView.OnScrollListener {
+    // How many rows past the last visible one to preload when the list is scrolled slowly
+    private static final int MIN_ROWS_AHEAD = 3;
+    // ... and at most, when it is flung
+    private static final int MAX_ROWS_AHEAD = 8;
+
+    private final Context mContext;
+    private final ForecastAdapter mAdapter;
+    private final int mIconSize;
+    private final Set<String> mRequested = new HashSet<String>();
+
+    ForecastArtPreloader(Context context, ForecastAdapter adapter) {
+        mContext = context.getApplicationContext();
+        mAdapter = adapter;
+        // Every row after the first uses list_item_forecast, whose icon is list_icon square.
+        mIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0 || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        if (Utility.usingLocalGraphics(mContext)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        // Look further ahead the more rows a single scroll step covers
+        int rowsAhead = MIN_ROWS_AHEAD;
+        View firstView = layoutManager.findViewByPosition(first);
+        if (firstView != null && firstView.getHeight() > 0) {
+            rowsAhead += Math.abs(dy) / firstView.getHeight() * MIN_ROWS_AHEAD;
+        }
+        rowsAhead = Math.min(rowsAhead, MAX_ROWS_AHEAD);
+
+        if (dy > 0) {
+            preload(last + 1, Math.min(last + rowsAhead, mAdapter.getItemCount() - 1));
+        } else {
+            preload(Math.max(first - rowsAhead, 1), first - 1);
+        }
+    }
+
+    private void preload(int from, int to) {
+        for (int position = from; position <= to; position++) {
+            String url = Utility.getArtUrlForWeatherCondition(mContext,
+                    mAdapter.getItem(position).weatherId);
+            if (url == null) {
+                continue;
+            }
+            String key = url + "@" + mIconSize;
+            if (!mRequested.add(key)) {
+                continue;
+            }
+            WeatherArtService.getInstance(mContext)
+                    .load(Glide.with(mContext), mAdapter.getItem(position).weatherId)
+                    .fitCenter()
+                    .into(new PreloadTarget(key, mIconSize));
+        }
+    }
+
+    /**
+     * Releases the loaded image straight away, which moves it into Glide's memory cache.
+     */
+    private class PreloadTarget extends SimpleTarget<GlideDrawable> {
+        private final String mKey;
+
+        PreloadTarget(String key, int size) {
+            super(size, size);
+            mKey = key;
+        }
+
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+            Glide.clear(this);
+        }
+
+        @Override
+        public void onLoadFailed(Exception e, Drawable errorDrawable) {
+            // Allow the next scroll to try again, e.g. once the network is back
+            mRequested.remove(mKey);
+        }
+    }
+}
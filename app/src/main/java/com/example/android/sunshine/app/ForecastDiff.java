@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The range updates needed to turn one forecast list into another.
+ *
+ * Both lists come from the provider sorted by ascending date, and a date appears at most once, so
+ * the lists can be merged in a single pass keyed by date: dates only in the old list are removed,
+ * dates only in the new list are inserted, and dates in both are changed if their contents differ.
+ * Consecutive updates of the same kind are coalesced into one range.
+ */
+final class ForecastDiff {
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int CHANGE = 2;
+
+    // Each update is {type, positionStart, itemCount}, with positions as they are at the time
+    // the update is dispatched.
+    private final List<int[]> mUpdates = new ArrayList<int[]>();
+    private int mInserted;
+    private int mRemoved;
+    private int mChanged;
+
+    private ForecastDiff() {
+    }
+
+    /**
+     * Calculates the updates between two date-sorted lists.  Safe to call off the main thread as
+     * long as neither list is modified.
+     */
+    static ForecastDiff calculate(List<ForecastItem> oldItems, List<ForecastItem> newItems) {
+        ForecastDiff diff = new ForecastDiff();
+        int oldIndex = 0;
+        int newIndex = 0;
+        int position = 0;
+        while (oldIndex < oldItems.size() && newIndex < newItems.size()) {
+            ForecastItem oldItem = oldItems.get(oldIndex);
+            ForecastItem newItem = newItems.get(newIndex);
+            if (oldItem.date < newItem.date) {
+                diff.add(REMOVE, position);
+                oldIndex++;
+            } else if (newItem.date < oldItem.date) {
+                diff.add(INSERT, position);
+                position++;
+                newIndex++;
+            } else {
+                if (!oldItem.hasSameContents(newItem)) {
+                    diff.add(CHANGE, position);
+                }
+                position++;
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        for (; oldIndex < oldItems.size(); oldIndex++) {
+            diff.add(REMOVE, position);
+        }
+        for (; newIndex < newItems.size(); newIndex++) {
+            diff.add(INSERT, position);
+            position++;
+        }
+        return diff;
+    }
+
+    private void add(int type, int position) {
+        switch (type) {
+            case INSERT:
+                mInserted++;
+                break;
+            case REMOVE:
+                mRemoved++;
+                break;
+            default:
+                mChanged++;
+        }
+        if (!mUpdates.isEmpty()) {
+            int[] last = mUpdates.get(mUpdates.size() - 1);
+            // Removals keep hitting the same position; inserts and changes move one forward
+            int next = type == REMOVE ? last[1] : last[1] + last[2];
+            if (last[0] == type && position == next) {
+                last[2]++;
+                return;
+            }
+        }
+        mUpdates.add(new int[]{type, position, 1});
+    }
+
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int[] update : mUpdates) {
+            switch (update[0]) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(update[1], update[2]);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(update[1], update[2]);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(update[1], update[2]);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return mUpdates.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return mInserted + " inserted, " + mRemoved + " removed, " + mChanged + " changed in "
+                + mUpdates.size() + " range updates";
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of one day of the forecast.  The adapter binds from these instead of the
+ * loader's cursor so that the old and new lists can be compared after the cursor is swapped, and
+ * the detail pane can bind from the same objects through the {@link ForecastRepository}.
+ */
+final class ForecastItem {
+    final long date;
+    final int weatherId;
+    final String description;
+    final double high;
+    final double low;
+    // Only shown in the detail view
+    final float humidity;
+    final float pressure;
+    final float windSpeed;
+    final float degrees;
+
+    ForecastItem(long date, int weatherId, String description, double high, double low,
+                 float humidity, float pressure, float windSpeed, float degrees) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.description = description;
+        this.high = high;
+        this.low = low;
+        this.humidity = humidity;
+        this.pressure = pressure;
+        this.windSpeed = windSpeed;
+        this.degrees = degrees;
+    }
+
+    /**
+     * Reads every row of a cursor using the {@link ForecastFragment} projection.
+     *
+     * @param cursor cursor returned for ForecastFragment.FORECAST_COLUMNS, may be null
+     * @return the rows in cursor order, never null
+     */
+    static List<ForecastItem> fromCursor(Cursor cursor) {
+        if (cursor == null || cursor.isClosed() || cursor.getCount() == 0) {
+            return Collections.emptyList();
+        }
+        List<ForecastItem> items = new ArrayList<ForecastItem>(cursor.getCount());
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            items.add(new ForecastItem(
+                    cursor.getLong(ForecastFragment.COL_WEATHER_DATE),
+                    cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                    cursor.getString(ForecastFragment.COL_WEATHER_DESC),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                    cursor.getFloat(ForecastFragment.COL_WEATHER_HUMIDITY),
+                    cursor.getFloat(ForecastFragment.COL_WEATHER_PRESSURE),
+                    cursor.getFloat(ForecastFragment.COL_WEATHER_WIND_SPEED),
+                    cursor.getFloat(ForecastFragment.COL_WEATHER_DEGREES)));
+        }
+        return items;
+    }
+
+    /**
+     * @return true if binding this item in the forecast list would show exactly what binding
+     * other shows.  Fields only used by the detail view are not compared.
+     */
+    boolean hasSameContents(ForecastItem other) {
+        return date == other.date
+                && weatherId == other.weatherId
+                && Double.compare(high, other.high) == 0
+                && Double.compare(low, other.low) == 0
+                && (description == null
+                        ? other.description == null : description.equals(other.description));
+    }
+
+    /**
+     * @return true if this item and other are identical, including the detail-only fields.
+     */
+    boolean hasSameDetails(ForecastItem other) {
+        return hasSameContents(other)
+                && Float.compare(humidity, other.humidity) == 0
+                && Float.compare(pressure, other.pressure) == 0
+                && Float.compare(windSpeed, other.windSpeed) == 0
+                && Float.compare(degrees, other.degrees) == 0;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Activity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-memory copy of the forecast shown by an activity, shared by its fragments.
+ *
+ * {@link ForecastFragment}'s loader already queries every column of the location's forecast and
+ * re-queries whenever the provider changes, so it publishes each result here.  A
+ * {@link DetailFragment} hosted by the same activity can then bind the selected day straight
+ * from memory instead of running its own query for a row that was just read, which makes
+ * switching days in the two-pane layout free of database work.  Everything here is main-thread
+ * only, like the loader callbacks that feed it.
+ */
+class ForecastRepository {
+
+    /**
+     * Implemented by activities that own a repository for their fragments to share.
+     */
+    interface Provider {
+        ForecastRepository getForecastRepository();
+    }
+
+    interface Listener {
+        void onForecastChanged();
+    }
+
+    private String mLocationSetting;
+    private List<ForecastItem> mItems = Collections.emptyList();
+    private final List<Listener> mListeners = new ArrayList<Listener>();
+
+    /**
+     * @return the repository of the activity, or null if it does not have one.
+     */
+    static ForecastRepository from(Activity activity) {
+        if (activity instanceof Provider) {
+            return ((Provider) activity).getForecastRepository();
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the forecast and tells the listeners.
+     *
+     * @param locationSetting the location the items were loaded for
+     * @param items the forecast sorted by ascending date; not copied, so must not be modified
+     */
+    void setForecast(String locationSetting, List<ForecastItem> items) {
+        mLocationSetting = locationSetting;
+        mItems = items;
+        notifyListeners();
+    }
+
+    /**
+     * Forgets the forecast and tells the listeners, so that nothing keeps showing its days.
+     */
+    void clear() {
+        mLocationSetting = null;
+        mItems = Collections.emptyList();
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            mListeners.get(i).onForecastChanged();
+        }
+    }
+
+    /**
+     * @param locationSetting the location the caller is showing
+     * @param date normalized date of the day
+     * @return the day's forecast, or null if it has not been loaded for that location.
+     */
+    ForecastItem getItem(String locationSetting, long date) {
+        if (locationSetting == null || !locationSetting.equals(mLocationSetting)) {
+            return null;
+        }
+        // At most a couple of weeks of rows, sorted by date
+        int low = 0;
+        int high = mItems.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midDate = mItems.get(mid).date;
+            if (midDate < date) {
+                low = mid + 1;
+            } else if (midDate > date) {
+                high = mid - 1;
+            } else {
+                return mItems.get(mid);
+            }
+        }
+        return null;
+    }
+
+    void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+}
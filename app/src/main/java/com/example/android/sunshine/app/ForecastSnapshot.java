@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The last forecast list written by a sync, kept in a small binary file so that
+ * {@link ForecastFragment} can show it before its loader has queried the database.
+ *
+ * File layout (big-endian): magic, version, location setting, row count, then for each row its
+ * date, weather id, high, low, humidity, pressure, wind speed, wind direction and short
+ * description.  Strings are an int byte length followed by UTF-8 bytes.
+ */
+public class ForecastSnapshot {
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+    private static final String FILE_NAME = "forecast_snapshot.bin";
+    private static final int MAGIC = 0x53554e53; // "SUNS"
+    private static final int VERSION = 2;
+    private static final String UTF_8 = "UTF-8";
+
+    private ForecastSnapshot() {
+    }
+
+    /**
+     * Writes the current forecast for the preferred location.  Does disk and database work, so
+     * it should only be called off the main thread, e.g. at the end of a sync.
+     *
+     * @param context Context used to query the provider and locate the file
+     */
+    public static void write(Context context) {
+        String location = Utility.getPreferredLocation(context);
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherForLocationUri,
+                ForecastFragment.FORECAST_COLUMNS, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
+        List<ForecastItem> items;
+        try {
+            items = ForecastItem.fromCursor(cursor);
+        } finally {
+            cursor.close();
+        }
+
+        File file = getFile(context);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, location);
+            out.writeInt(items.size());
+            for (ForecastItem item : items) {
+                out.writeLong(item.date);
+                out.writeInt(item.weatherId);
+                out.writeDouble(item.high);
+                out.writeDouble(item.low);
+                out.writeFloat(item.humidity);
+                out.writeFloat(item.pressure);
+                out.writeFloat(item.windSpeed);
+                out.writeFloat(item.degrees);
+                writeString(out, item.description);
+            }
+            out.close();
+            out = null;
+            // Readers only ever see a complete file
+            if (!tmpFile.renameTo(file)) {
+                Log.w(LOG_TAG, "Unable to replace " + file);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing forecast snapshot", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the snapshot by memory-mapping it.  The file is a few hundred bytes, so this is cheap
+     * enough to do on the main thread before the first frame.
+     *
+     * @param context Context used to locate the file
+     * @param location only return rows written for this location setting
+     * @return the rows from today onwards, or an empty list if there is no usable snapshot
+     */
+    static List<ForecastItem> read(Context context, String location) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || !readString(buffer).equals(location)) {
+                return Collections.emptyList();
+            }
+            long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+            int count = buffer.getInt();
+            List<ForecastItem> items = new ArrayList<ForecastItem>(count);
+            for (int i = 0; i < count; i++) {
+                long date = buffer.getLong();
+                int weatherId = buffer.getInt();
+                double high = buffer.getDouble();
+                double low = buffer.getDouble();
+                float humidity = buffer.getFloat();
+                float pressure = buffer.getFloat();
+                float windSpeed = buffer.getFloat();
+                float degrees = buffer.getFloat();
+                String description = readString(buffer);
+                // The snapshot may be from an earlier day; the loader only shows today onwards
+                if (date >= today) {
+                    items.add(new ForecastItem(date, weatherId, description, high, low,
+                            humidity, pressure, windSpeed, degrees));
+                }
+            }
+            return items;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            Log.e(LOG_TAG, "Ignoring unreadable forecast snapshot", e);
+            return Collections.emptyList();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -33,7 +33,8 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
-public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback {
+public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback,
+        ForecastRepository.Provider {
 
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private static final String DETAILFRAGMENT_TAG = "DFTAG";
@@ -42,6 +43,8 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     private boolean mTwoPane;
     private String mLocation;
+    // Lets the detail pane bind from the rows the forecast list has already loaded
+    private final ForecastRepository mForecastRepository = new ForecastRepository();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -130,6 +133,11 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         }
     }
 
+    @Override
+    public ForecastRepository getForecastRepository() {
+        return mForecastRepository;
+    }
+
     @Override
     public void onItemSelected(Uri contentUri, ForecastAdapter.ForecastAdapterViewHolder vh) {
         if (mTwoPane) {
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Measures how long a cold start takes to show the forecast.  The clock starts when the
+ * {@link SunshineApplication} is created and stops at the first frame that draws forecast rows.
+ */
+final class StartupTimer {
+    private static final String LOG_TAG = StartupTimer.class.getSimpleName();
+
+    private static long sProcessStart = -1;
+    private static boolean sFirstLoadReported;
+    private static boolean sFirstDrawReported;
+
+    private StartupTimer() {
+    }
+
+    static void markProcessStart() {
+        if (sProcessStart < 0) {
+            sProcessStart = SystemClock.uptimeMillis();
+        }
+    }
+
+    private static void mark(String milestone) {
+        if (sProcessStart >= 0) {
+            Log.d(LOG_TAG, milestone + " " + (SystemClock.uptimeMillis() - sProcessStart)
+                    + "ms after process start");
+        }
+    }
+
+    /**
+     * Logs when the forecast loader first delivers its data in this process.
+     */
+    static void reportFirstForecastLoad() {
+        if (sFirstLoadReported) {
+            return;
+        }
+        sFirstLoadReported = true;
+        mark("Forecast loader finished");
+    }
+
+    /**
+     * Logs the first meaningful draw.  Only the first call in a process is reported, so later
+     * activity launches don't show up as cold starts.
+     *
+     * @param source where the drawn rows came from
+     */
+    static void reportFirstMeaningfulDraw(String source) {
+        if (sFirstDrawReported) {
+            return;
+        }
+        sFirstDrawReported = true;
+        mark("First forecast draw (from " + source + ")");
+    }
+}
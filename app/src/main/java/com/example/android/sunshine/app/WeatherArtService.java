@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.DrawableTypeRequest;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.request.FutureTarget;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The one place weather art is loaded, for every part of the app that shows it: the forecast
+ * list and detail views, the detail widget, the notification and the watch.
+ *
+ * Art is identified by condition, art pack and the size it is drawn at. Conditions that share
+ * art share entries, since the key is the art URL the condition and pack give. Each variant is
+ * downloaded and scaled once, then kept on disk as a PNG at its final size and in a memory LRU,
+ * so it is decoded at most once per process while it stays in memory. Decoding reuses bitmaps
+ * from Glide's pool, which the views' own loads through {@link #load(RequestManager, int)} share.
+ *
+ * Views load through Glide, which caches the same way for them. Everything else gets bitmaps
+ * from the blocking methods here, which must not be called from the main thread.
+ */
+public final class WeatherArtService {
+    private static final String LOG_TAG = WeatherArtService.class.getSimpleName();
+
+    private static final String DIRECTORY = "weather_art";
+    private static final long LOAD_TIMEOUT_SECONDS = 30;
+    // Share of the heap the memory cache may use
+    private static final int MEMORY_CACHE_DIVISOR = 16;
+
+    private static WeatherArtService sInstance;
+
+    private final Context mContext;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final BitmapPool mBitmapPool;
+
+    private int mRequests;
+    private int mMemoryHits;
+    private int mDiskHits;
+    private int mLoads;
+    private int mMisses;
+    private int mFailures;
+
+    public static synchronized WeatherArtService getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherArtService(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherArtService(Context context) {
+        mContext = context;
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVISOR,
+                Integer.MAX_VALUE);
+        mMemoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+        mBitmapPool = Glide.get(context).getBitmapPool();
+    }
+
+    /**
+     * Starts a view's load of the art for the condition in the preferred art pack.
+     */
+    public DrawableTypeRequest<String> load(RequestManager requestManager, int weatherId) {
+        return requestManager.load(Utility.getArtUrlForWeatherCondition(mContext, weatherId));
+    }
+
+    /**
+     * @return the art for the condition in the art pack, scaled to fit the size, downloading it
+     * if it isn't cached; null if it can't be loaded
+     */
+    public Bitmap getArt(String artPack, int weatherId, int width, int height) {
+        return getArt(artPack, weatherId, width, height, true);
+    }
+
+    /**
+     * Like {@link #getArt(String, int, int, int)}, but never downloads, so it only takes as long
+     * as reading a small file.
+     *
+     * @return the art, or null if it isn't cached
+     */
+    public Bitmap getCachedArt(String artPack, int weatherId, int width, int height) {
+        return getArt(artPack, weatherId, width, height, false);
+    }
+
+    /**
+     * @return the art as the PNG it is cached as, downloading it if it isn't cached; null if it
+     * can't be loaded
+     */
+    public byte[] getArtPng(String artPack, int weatherId, int width, int height) {
+        String artUrl = Utility.getArtUrlForWeatherCondition(artPack, weatherId);
+        if (artUrl == null) {
+            return null;
+        }
+        File file = getFile(getKey(artUrl, width, height));
+        if (file.exists()) {
+            count(Source.DISK);
+        } else if (loadToDisk(artUrl, width, height, file) == null) {
+            return null;
+        }
+        try {
+            return readFully(file);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Downloads the art of the conditions that isn't cached on disk yet, so that later calls of
+     * {@link #getCachedArt(String, int, int, int)} find it. Each piece of art is tried once, and
+     * nothing more once a download fails, so this waits for at most one download timeout.
+     */
+    public void prefetch(String artPack, int[] weatherIds, int width, int height) {
+        Set<String> artUrls = new HashSet<>();
+        for (int weatherId : weatherIds) {
+            String artUrl = Utility.getArtUrlForWeatherCondition(artPack, weatherId);
+            // Conditions often share art
+            if (artUrl == null || !artUrls.add(artUrl)) {
+                continue;
+            }
+            File file = getFile(getKey(artUrl, width, height));
+            if (!file.exists() && loadToDisk(artUrl, width, height, file) == null) {
+                // The network or the art pack is down, and the rest would time out the same way
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the bundled art resource, scaled down to fit the size
+     */
+    public Bitmap getBundledArt(int artResourceId, int width, int height) {
+        String key = "res:" + artResourceId + "@" + width + "x" + height;
+        Bitmap art = mMemoryCache.get(key);
+        count(art != null ? Source.MEMORY : Source.LOADED);
+        if (art != null) {
+            return art;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mContext.getResources(), artResourceId, options);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= width
+                && options.outHeight / (options.inSampleSize * 2) >= height) {
+            options.inSampleSize *= 2;
+        }
+        art = BitmapFactory.decodeResource(mContext.getResources(), artResourceId, options);
+        if (art == null) {
+            return null;
+        }
+        float scale = Math.min((float) width / art.getWidth(), (float) height / art.getHeight());
+        if (scale < 1) {
+            Bitmap scaled = Bitmap.createScaledBitmap(art, Math.round(art.getWidth() * scale),
+                    Math.round(art.getHeight() * scale), true);
+            if (scaled != art) {
+                art.recycle();
+            }
+            art = scaled;
+        }
+        mMemoryCache.put(key, art);
+        return art;
+    }
+
+    /**
+     * @return the cache's hit rates since the process started, for the log
+     */
+    public synchronized String getStats() {
+        int hits = mMemoryHits + mDiskHits;
+        return String.format(Locale.US,
+                "Art requests: %d, memory hits: %d, disk hits: %d, loaded: %d, missed: %d, "
+                        + "failed: %d, hit rate: %.0f%%",
+                mRequests, mMemoryHits, mDiskHits, mLoads, mMisses, mFailures,
+                mRequests == 0 ? 0f : 100f * hits / mRequests);
+    }
+
+    private Bitmap getArt(String artPack, int weatherId, int width, int height,
+                          boolean allowLoad) {
+        String artUrl = Utility.getArtUrlForWeatherCondition(artPack, weatherId);
+        if (artUrl == null) {
+            return null;
+        }
+        String key = getKey(artUrl, width, height);
+        Bitmap art = mMemoryCache.get(key);
+        if (art != null) {
+            count(Source.MEMORY);
+            return art;
+        }
+        File file = getFile(key);
+        if (file.exists()) {
+            art = decode(file);
+            if (art != null) {
+                count(Source.DISK);
+                mMemoryCache.put(key, art);
+                return art;
+            }
+        }
+        if (!allowLoad) {
+            count(Source.MISSED);
+            return null;
+        }
+        art = loadToDisk(artUrl, width, height, file);
+        if (art != null) {
+            mMemoryCache.put(key, art);
+        }
+        return art;
+    }
+
+    /**
+     * Downloads the art, scales it and writes it to the file.
+     *
+     * @return the scaled art, or null if it can't be loaded
+     */
+    private Bitmap loadToDisk(String artUrl, int width, int height, File file) {
+        FutureTarget<Bitmap> future = Glide.with(mContext)
+                .load(artUrl)
+                .asBitmap()
+                .fitCenter()
+                .into(width, height);
+        Bitmap art;
+        try {
+            // The loaded bitmap belongs to Glide, which may reuse it once the request is
+            // cleared, so the memory cache gets a copy of its own
+            Bitmap loaded = future.get(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            art = loaded.copy(loaded.getConfig() != null
+                    ? loaded.getConfig() : Bitmap.Config.ARGB_8888, false);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            Log.e(LOG_TAG, "Error retrieving art from " + artUrl, e);
+            count(Source.FAILED);
+            return null;
+        } finally {
+            Glide.clear(future);
+        }
+        if (art == null) {
+            count(Source.FAILED);
+            return null;
+        }
+        count(Source.LOADED);
+        write(art, file);
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Loaded " + artUrl + " at " + width + "x" + height + ". " + getStats());
+        }
+        return art;
+    }
+
+    private Bitmap decode(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(file.getPath(), options);
+            options.inJustDecodeBounds = false;
+            setInBitmap(options);
+        }
+        try {
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap couldn't be reused after all
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void setInBitmap(BitmapFactory.Options options) {
+        // Variants are stored at their final size, so one of exactly that size can be reused
+        options.inBitmap = mBitmapPool.get(options.outWidth, options.outHeight,
+                Bitmap.Config.ARGB_8888);
+        options.inMutable = true;
+    }
+
+    private void write(Bitmap art, File file) {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create " + directory);
+            return;
+        }
+        // Written beside the final file and renamed, so that a cached variant is always whole.
+        // Threads may write the same variant at once, so each writes its own.
+        File tmpFile = null;
+        try {
+            tmpFile = File.createTempFile(file.getName(), ".tmp", directory);
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                art.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(file)) {
+                Log.e(LOG_TAG, "Can't rename " + tmpFile);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + file, e);
+        } finally {
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(new File(mContext.getCacheDir(), DIRECTORY),
+                Integer.toHexString(key.hashCode()) + ".png");
+    }
+
+    private static String getKey(String artUrl, int width, int height) {
+        return artUrl + "@" + width + "x" + height;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            int read;
+            while (offset < bytes.length
+                    && (read = in.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+            if (offset < bytes.length) {
+                throw new IOException("Truncated " + file);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private enum Source {
+        MEMORY, DISK, LOADED, MISSED, FAILED
+    }
+
+    private synchronized void count(Source source) {
+        mRequests++;
+        switch (source) {
+            case MEMORY:
+                mMemoryHits++;
+                break;
+            case DISK:
+                mDiskHits++;
+                break;
+            case LOADED:
+                mLoads++;
+                break;
+            case MISSED:
+                mMisses++;
+                break;
+            case FAILED:
+                mFailures++;
+                break;
+        }
+    }
+}
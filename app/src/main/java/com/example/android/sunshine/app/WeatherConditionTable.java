@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import com.example.android.sunshine.core.WeatherConditions;
+
+/**
+ * Dense lookup table from OpenWeatherMap condition codes to the icon, art, string and image
+ * resources Sunshine shows for them. The table is built once, the first time the class is used,
+ * so the lookups in {@link Utility} are a bounds check and an array read instead of a chain of
+ * range comparisons. Which art a code gets comes from {@link WeatherConditions}, which the watch
+ * face shares.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+final class WeatherConditionTable {
+
+    static final int MIN_CODE = WeatherConditions.MIN_CODE;
+    static final int MAX_CODE = WeatherConditions.MAX_CODE;
+
+    // These arrays are indexed by group and must stay in the order of the constants in
+    // WeatherConditions.
+    private static final int[] GROUP_ICONS = {
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy,
+            R.drawable.ic_storm
+    };
+
+    private static final int[] GROUP_ART = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds,
+            R.drawable.art_storm
+    };
+
+    // Per-code string resource, indexed by (code - MIN_CODE).  A string resource of 0 means the
+    // code has no description of its own.
+    private static final int[] sStrings = new int[MAX_CODE - MIN_CODE + 1];
+
+    static {
+        mapString(200, 232, R.string.condition_2xx);
+        mapString(300, 321, R.string.condition_3xx);
+        mapString(500, R.string.condition_500);
+        mapString(501, R.string.condition_501);
+        mapString(502, R.string.condition_502);
+        mapString(503, R.string.condition_503);
+        mapString(504, R.string.condition_504);
+        mapString(511, R.string.condition_511);
+        mapString(520, R.string.condition_520);
+        mapString(531, R.string.condition_531);
+        mapString(600, R.string.condition_600);
+        mapString(601, R.string.condition_601);
+        mapString(602, R.string.condition_602);
+        mapString(611, R.string.condition_611);
+        mapString(612, R.string.condition_612);
+        mapString(615, R.string.condition_615);
+        mapString(616, R.string.condition_616);
+        mapString(620, R.string.condition_620);
+        mapString(621, R.string.condition_621);
+        mapString(622, R.string.condition_622);
+        mapString(701, R.string.condition_701);
+        mapString(711, R.string.condition_711);
+        mapString(721, R.string.condition_721);
+        mapString(731, R.string.condition_731);
+        mapString(741, R.string.condition_741);
+        mapString(751, R.string.condition_751);
+        mapString(761, R.string.condition_761);
+        mapString(762, R.string.condition_762);
+        mapString(771, R.string.condition_771);
+        mapString(781, R.string.condition_781);
+        mapString(800, R.string.condition_800);
+        mapString(801, R.string.condition_801);
+        mapString(802, R.string.condition_802);
+        mapString(803, R.string.condition_803);
+        mapString(804, R.string.condition_804);
+        mapString(900, R.string.condition_900);
+        mapString(901, R.string.condition_901);
+        mapString(902, R.string.condition_902);
+        mapString(903, R.string.condition_903);
+        mapString(904, R.string.condition_904);
+        mapString(905, R.string.condition_905);
+        mapString(906, R.string.condition_906);
+        mapString(951, R.string.condition_951);
+        mapString(952, R.string.condition_952);
+        mapString(953, R.string.condition_953);
+        mapString(954, R.string.condition_954);
+        mapString(955, R.string.condition_955);
+        mapString(956, R.string.condition_956);
+        mapString(957, R.string.condition_957);
+        mapString(958, R.string.condition_958);
+        mapString(959, R.string.condition_959);
+        mapString(960, R.string.condition_960);
+        mapString(961, R.string.condition_961);
+        mapString(962, R.string.condition_962);
+    }
+
+    private WeatherConditionTable() {
+    }
+
+    private static void mapString(int fromCode, int toCode, int stringId) {
+        for (int code = fromCode; code <= toCode; code++) {
+            sStrings[code - MIN_CODE] = stringId;
+        }
+    }
+
+    private static void mapString(int code, int stringId) {
+        sStrings[code - MIN_CODE] = stringId;
+    }
+
+    static int getIconResource(int weatherId) {
+        int group = WeatherConditions.getGroup(weatherId);
+        return group == WeatherConditions.NO_GROUP ? -1 : GROUP_ICONS[group];
+    }
+
+    static int getArtResource(int weatherId) {
+        int group = WeatherConditions.getGroup(weatherId);
+        return group == WeatherConditions.NO_GROUP ? -1 : GROUP_ART[group];
+    }
+
+    static String getImageUrl(int weatherId) {
+        return WeatherConditions.getImageUrl(weatherId);
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the string resource describing the condition, or 0 if there is none.
+     */
+    static int getStringResource(int weatherId) {
+        if (weatherId < MIN_CODE || weatherId > MAX_CODE) {
+            return 0;
+        }
+        return sStrings[weatherId - MIN_CODE];
+    }
+
+    /**
+     * @param artPackFormat the art pack URL format, with a single %s for the art name
+     * @param weatherId from OpenWeatherMap API response
+     * @return url for the corresponding weather artwork. null if no relation is found.
+     */
+    static String getArtUrl(String artPackFormat, int weatherId) {
+        return WeatherConditions.getArtUrl(artPackFormat, weatherId);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the weather wallpapers on disk, scaled down to the screen, so that Muzei is given a
+ * local copy of a few hundred kilobytes instead of downloading the multi-megabyte original each
+ * time the weather changes. The images are served to Muzei by {@link WeatherArtworkProvider}.
+ *
+ * There is one image per distinct image URL, and so only a handful in all. Downloads block, so
+ * this must not be used from the main thread.
+ */
+final class MuzeiArtCache {
+    private static final String LOG_TAG = MuzeiArtCache.class.getSimpleName();
+
+    static final String AUTHORITY = "com.example.android.sunshine.app.muzei";
+    private static final String DIRECTORY = "muzei_art";
+    // Names of the cached images, which are all the provider will serve
+    private static final Pattern FILE_NAME = Pattern.compile("[0-9a-f]+\\.jpg");
+
+    private static final int JPEG_QUALITY = 85;
+    private static final int TIMEOUT_MS = 30 * 1000;
+
+    private MuzeiArtCache() {
+    }
+
+    /**
+     * @return the content URI of the image, downloading and scaling it first if it isn't cached;
+     * null if it can't be downloaded
+     */
+    static Uri fetch(Context context, String imageUrl) {
+        File file = getFile(context, getFileName(imageUrl));
+        if (file.exists() || download(context, imageUrl, file)) {
+            return new Uri.Builder()
+                    .scheme("content")
+                    .authority(AUTHORITY)
+                    .appendPath(file.getName())
+                    .build();
+        }
+        return null;
+    }
+
+    static boolean isCached(Context context, String imageUrl) {
+        return getFile(context, getFileName(imageUrl)).exists();
+    }
+
+    /**
+     * @return the cached image with the name, or null if the name isn't one this cache uses
+     */
+    static File getCachedFile(Context context, String fileName) {
+        if (fileName == null || !FILE_NAME.matcher(fileName).matches()) {
+            return null;
+        }
+        return getFile(context, fileName);
+    }
+
+    /**
+     * @return whether the device is charging on an unmetered network, so that images can be
+     * downloaded before they are needed
+     */
+    static boolean isPrefetchAllowed(Context context) {
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null || battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) == 0) {
+            return false;
+        }
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+        if (activeNetwork == null || !activeNetwork.isConnected()) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return !cm.isActiveNetworkMetered();
+        }
+        return activeNetwork.getType() == ConnectivityManager.TYPE_WIFI;
+    }
+
+    private static String getFileName(String imageUrl) {
+        return Integer.toHexString(imageUrl.hashCode()) + ".jpg";
+    }
+
+    private static File getFile(Context context, String fileName) {
+        return new File(new File(context.getCacheDir(), DIRECTORY), fileName);
+    }
+
+    private static boolean download(Context context, String imageUrl, File file) {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create " + directory);
+            return false;
+        }
+        // Written beside the final file and renamed, so that a cached image is always whole
+        File original = new File(directory, file.getName() + ".download");
+        File scaled = new File(directory, file.getName() + ".tmp");
+        long start = System.currentTimeMillis();
+        try {
+            if (!downloadTo(imageUrl, original)) {
+                return false;
+            }
+            Bitmap bitmap = decodeScaled(original, getScreenSize(context));
+            if (bitmap == null) {
+                Log.e(LOG_TAG, "Can't decode " + imageUrl);
+                return false;
+            }
+            OutputStream out = new FileOutputStream(scaled);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            } finally {
+                out.close();
+                bitmap.recycle();
+            }
+            if (!scaled.renameTo(file)) {
+                return false;
+            }
+            Log.d(LOG_TAG, "Cached " + imageUrl + " in " + (System.currentTimeMillis() - start)
+                    + "ms: " + original.length() / 1024 + "KB scaled to "
+                    + file.length() / 1024 + "KB");
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error caching " + imageUrl, e);
+            return false;
+        } finally {
+            original.delete();
+            scaled.delete();
+        }
+    }
+
+    private static boolean downloadTo(String imageUrl, File file) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) new URL(imageUrl).openConnection();
+        urlConnection.setConnectTimeout(TIMEOUT_MS);
+        urlConnection.setReadTimeout(TIMEOUT_MS);
+        try {
+            if (urlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "Error downloading " + imageUrl + ": "
+                        + urlConnection.getResponseCode());
+                return false;
+            }
+            InputStream in = urlConnection.getInputStream();
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+                in.close();
+            }
+            return true;
+        } finally {
+            urlConnection.disconnect();
+        }
+    }
+
+    /**
+     * Decodes the image with its shorter side scaled down to the size, which is what Muzei needs
+     * to fill the screen in either orientation.
+     */
+    private static Bitmap decodeScaled(File file, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        int shorterSide = Math.min(options.outWidth, options.outHeight);
+        if (shorterSide <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (shorterSide / (options.inSampleSize * 2) >= size) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap sampled = BitmapFactory.decodeFile(file.getPath(), options);
+        if (sampled == null) {
+            return null;
+        }
+        float scale = (float) size / Math.min(sampled.getWidth(), sampled.getHeight());
+        if (scale >= 1) {
+            return sampled;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled,
+                Math.round(sampled.getWidth() * scale), Math.round(sampled.getHeight() * scale),
+                true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    private static int getScreenSize(Context context) {
+        DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
+        return Math.max(displayMetrics.widthPixels, displayMetrics.heightPixels);
+    }
+}
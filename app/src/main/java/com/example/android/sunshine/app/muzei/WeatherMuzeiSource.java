@@ -18,6 +18,7 @@ package com.example.android.sunshine.app.muzei;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.util.Log;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
@@ -28,8 +29,14 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
 
 /**
  * Muzei source that changes your background based on the current weather conditions
+ *
+ * A new wallpaper is only published when the condition or location changes, and is given to
+ * Muzei as a local copy scaled to the screen from {@link MuzeiArtCache}. While charging on an
+ * unmetered network, the images for the coming days are cached ahead of time too.
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
+    private static final String LOG_TAG = WeatherMuzeiSource.class.getSimpleName();
+
     private static final String[] FORECAST_COLUMNS = new String[]{
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
@@ -38,6 +45,9 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_SHORT_DESC = 1;
 
+    // Days after today whose images are cached ahead of time
+    private static final int PREFETCH_DAYS = 3;
+
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
     }
@@ -59,21 +69,57 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
                 location, System.currentTimeMillis());
         Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
                 null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
+        if (cursor == null) {
+            return;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
             int weatherId = cursor.getInt(INDEX_WEATHER_ID);
             String desc = cursor.getString(INDEX_SHORT_DESC);
 
             String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
             // Only publish a new wallpaper if we have a valid image
             if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+                publish(reason, imageUrl, weatherId, desc, location);
             }
+
+            if (MuzeiArtCache.isPrefetchAllowed(this)) {
+                for (int day = 0; day < PREFETCH_DAYS && cursor.moveToNext(); day++) {
+                    String nextImageUrl = Utility.getImageUrlForWeatherCondition(
+                            cursor.getInt(INDEX_WEATHER_ID));
+                    if (nextImageUrl != null && !MuzeiArtCache.isCached(this, nextImageUrl)) {
+                        MuzeiArtCache.fetch(this, nextImageUrl);
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void publish(int reason, String imageUrl, int weatherId, String desc,
+                         String location) {
+        // Muzei keeps the token of the artwork it shows, so it tells whether anything changed
+        String token = weatherId + "|" + location;
+        Artwork currentArtwork = getCurrentArtwork();
+        if (reason == UPDATE_REASON_OTHER && currentArtwork != null
+                && token.equals(currentArtwork.getToken())) {
+            Log.d(LOG_TAG, "Weather condition unchanged, keeping the wallpaper");
+            return;
+        }
+        Uri imageUri = MuzeiArtCache.fetch(this, imageUrl);
+        if (imageUri == null) {
+            // Let Muzei download it instead
+            imageUri = Uri.parse(imageUrl);
         }
-        cursor.close();
+        publishArtwork(new Artwork.Builder()
+                .imageUri(imageUri)
+                .title(desc)
+                .byline(location)
+                .token(token)
+                .viewIntent(new Intent(this, MainActivity.class))
+                .build());
     }
 }
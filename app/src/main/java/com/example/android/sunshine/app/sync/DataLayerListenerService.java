@@ -1,71 +1,178 @@
 package com.example.android.sunshine.app.sync;
 
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.data.FreezableUtils;
+import com.google.android.gms.wearable.CapabilityInfo;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
 import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Created by peter on 12/11/16.
+ *
+ * Answers update requests from the watch face. The events carry everything needed to decide,
+ * so nothing connects to the Wearable API unless there is something to send. Each watch is
+ * answered at most once per {@link #UPDATE_THROTTLE_MS}, and from the stored forecast when it
+ * is fresh; only stale data starts a network sync, which then pushes to the watch itself.
+ *
+ * The watch face asks by message, sending the version of the weather it shows. The reply is a
+ * message too, read from the stored forecast: empty when the watch is up to date, otherwise the
+ * weather payload. Such requests are always answered, since answering reads no more than a
+ * few rows; the throttle only limits the syncs they start. Older watch faces ask with a
+ * DataItem, which is answered by a push.
+ *
+ * Also keeps {@link WatchNodeTracker} up to date: which watches are connected, from capability
+ * changes, and which weather each shows, from the watches' acknowledgements. A push skipped
+ * while no watch was connected is made once when one connects.
  */
-
 public class DataLayerListenerService extends WearableListenerService {
 
     private static final String TAG = "DataLayerListener";
     private static final String UPDATE_PATH = "/sunshine_watchface_update";
     private static final String UPDATE_KEY = "update";
+    private static final String REQUEST_PATH = "/sunshine_watchface/request";
+    private static final String RESPONSE_PATH = "/sunshine_watchface/response";
+    private static final String ACK_PATH = "/sunshine_watchface/ack";
+    private static final long TIMEOUT_SECONDS = 30;
+
+    // A watch face asks whenever an engine starts with old weather, which can be often
+    private static final long UPDATE_THROTTLE_MS = 1000 * 60 * 15;
+    // Prefix of the time a node's update request last started a push or a sync
+    private static final String PREF_NODE_ANSWERED = "watch_update_answered:";
 
     @Override
     public void onDataChanged(DataEventBuffer dataEvents) {
         if (Log.isLoggable(TAG, Log.DEBUG)) {
             Log.d(TAG, "onDataChanged: " + dataEvents);
         }
-        final List events = FreezableUtils
-                .freezeIterable(dataEvents);
+
+        // Several requests in one batch are answered by a single push
+        boolean updateRequested = false;
+        for (DataEvent event : dataEvents) {
+            if (event.getType() != DataEvent.TYPE_CHANGED) {
+                continue;
+            }
+            DataItem item = event.getDataItem();
+            if (!UPDATE_PATH.equals(item.getUri().getPath())) {
+                continue;
+            }
+            DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
+            if (!dataMap.getBoolean(UPDATE_KEY)) {
+                continue;
+            }
+            // The host of a DataItem's URI is the node that put it
+            if (isThrottled(item.getUri().getHost())) {
+                continue;
+            }
+            updateRequested = true;
+        }
+        if (!updateRequested) {
+            return;
+        }
+
+        // The watch may have lost what it was sent
+        WatchWeatherPublisher.forgetSentState(this);
+        if (SunshineSyncAdapter.isDataFresh(this)) {
+            Log.d(TAG, "Answering update request from the stored forecast");
+            // Called on a background thread, so the publisher can block
+            new WatchWeatherPublisher(this).publish();
+        } else {
+            Log.d(TAG, "Stored forecast is stale, syncing for the watch");
+            SunshineSyncAdapter.syncImmediately(this);
+        }
+    }
+
+    @Override
+    public void onCapabilityChanged(CapabilityInfo capabilityInfo) {
+        if (!WatchNodeTracker.CAPABILITY.equals(capabilityInfo.getName())) {
+            return;
+        }
+        WatchNodeTracker tracker = new WatchNodeTracker(this);
+        Set<String> connected = tracker.setConnectedNodes(
+                WatchWeatherPublisher.getNodeIds(capabilityInfo));
+        Log.d(TAG, capabilityInfo.getNodes().size() + " watches connected, "
+                + connected.size() + " newly");
+        if (!connected.isEmpty() && tracker.takePushPending()) {
+            Log.d(TAG, "Sending the weather skipped while no watch was connected");
+            new WatchWeatherPublisher(this).publish();
+        }
+    }
+
+    @Override
+    public void onMessageReceived(MessageEvent messageEvent) {
+        String path = messageEvent.getPath();
+        if (!REQUEST_PATH.equals(path) && !ACK_PATH.equals(path)) {
+            return;
+        }
+        String nodeId = messageEvent.getSourceNodeId();
+        byte[] request = messageEvent.getData();
+        long watchVersion = request != null && request.length == 8
+                ? ByteBuffer.wrap(request).getLong() : 0;
+        if (watchVersion != 0) {
+            // A request carries the version the watch shows, same as an acknowledgement
+            new WatchNodeTracker(this).acknowledge(nodeId, watchVersion);
+        }
+        if (ACK_PATH.equals(path)) {
+            return;
+        }
 
         GoogleApiClient googleApiClient = new GoogleApiClient.Builder(this)
                 .addApi(Wearable.API)
                 .build();
-
         ConnectionResult connectionResult =
-                googleApiClient.blockingConnect(30, TimeUnit.SECONDS);
-
+                googleApiClient.blockingConnect(TIMEOUT_SECONDS, TimeUnit.SECONDS);
         if (!connectionResult.isSuccess()) {
-            Log.e(TAG, "Failed to connect to GoogleApiClient.");
+            Log.e(TAG, "Failed to connect to GoogleApiClient: " + connectionResult);
             return;
         }
-
-        // Loop through the events and send a message
-        // to the node that created the data item.
-        Log.v("onDataChangedAdapter", "GO");
-        for (DataEvent event : dataEvents) {
-            if (event.getType() == DataEvent.TYPE_CHANGED) {
-                // DataItem changed
-                DataItem item = event.getDataItem();
-                Log.v("onDataChangedAdapter", item.getUri().getPath());
-                if (item.getUri().getPath().compareTo(UPDATE_PATH) == 0) {
-                    DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
-                    Log.v("onDataChangedAdapter", "2");
-                    if (dataMap.getBoolean(UPDATE_KEY)) {
-                        Log.v("onDataChangedAdapter", "UPDATEWATCH");
-//                        SunshineSyncAdapter.initializeSyncAdapter(this);
-                        SunshineSyncAdapter.syncImmediately(this);
-                    }
-                }
-            } else if (event.getType() == DataEvent.TYPE_DELETED) {
-                // DataItem deleted
+        byte[] reply;
+        try {
+            reply = new WatchWeatherPublisher(this).answer(googleApiClient, watchVersion);
+            if (reply != null) {
+                MessageApi.SendMessageResult result = Wearable.MessageApi
+                        .sendMessage(googleApiClient, nodeId, RESPONSE_PATH, reply)
+                        .await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                Log.d(TAG, "Answered " + nodeId + (reply.length == 0 ? " as up to date" : " with "
+                        + reply.length + " bytes") + ": " + result.getStatus().isSuccess());
             }
+        } finally {
+            googleApiClient.disconnect();
+        }
+
+        if ((reply == null || !SunshineSyncAdapter.isDataFresh(this)) && !isThrottled(nodeId)) {
+            Log.d(TAG, "Stored forecast is stale, syncing for the watch");
+            SunshineSyncAdapter.syncImmediately(this);
+        }
+    }
+
+    /**
+     * @return whether an update request from the node started a push or sync recently; if not,
+     * records that one is being started now
+     */
+    private boolean isThrottled(String nodeId) {
+        long now = System.currentTimeMillis();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        long answeredAt = prefs.getLong(PREF_NODE_ANSWERED + nodeId, 0);
+        if (now - answeredAt < UPDATE_THROTTLE_MS && now >= answeredAt) {
+            Log.d(TAG, "Throttling update request from " + nodeId + ", answered "
+                    + (now - answeredAt) / 1000 + "s ago");
+            return true;
         }
+        prefs.edit().putLong(PREF_NODE_ANSWERED + nodeId, now).apply();
+        return false;
     }
-}
\ No newline at end of file
+}
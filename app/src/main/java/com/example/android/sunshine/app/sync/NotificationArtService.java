@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArtService;
+
+/**
+ * Downloads the art the weather notification will show, after the sync that asked for it has
+ * finished, so that building a notification only ever reads its art from the cache and the sync
+ * never waits on a download.
+ */
+public class NotificationArtService extends IntentService {
+
+    private static final String EXTRA_WEATHER_IDS = "weather_ids";
+
+    public NotificationArtService() {
+        super("NotificationArtService");
+    }
+
+    /**
+     * @param weatherIds the conditions of the days a notification can show next
+     */
+    static void prefetch(Context context, int[] weatherIds) {
+        context.startService(new Intent(context, NotificationArtService.class)
+                .putExtra(EXTRA_WEATHER_IDS, weatherIds));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        int[] weatherIds = intent.getIntArrayExtra(EXTRA_WEATHER_IDS);
+        if (weatherIds == null) {
+            return;
+        }
+        int[] largeIconSize = SunshineSyncAdapter.getLargeIconSize(getResources());
+        WeatherArtService.getInstance(this).prefetch(Utility.getPreferredArtPack(this),
+                weatherIds, largeIconSize[0], largeIconSize[1]);
+    }
+}
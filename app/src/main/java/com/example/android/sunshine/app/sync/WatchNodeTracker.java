@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Remembers which watches with the Sunshine watch face are connected, and which version of the
+ * weather payload each last acknowledged, so that {@link WatchWeatherPublisher} can skip pushes
+ * nobody would receive or that every watch already shows.
+ *
+ * Kept in preferences because the sync adapter and {@link DataLayerListenerService} that use it
+ * come and go independently.
+ */
+class WatchNodeTracker {
+    // The capability the watch face declares, and so the path of its CAPABILITY_CHANGED events
+    static final String CAPABILITY = "sunshine_watchface";
+
+    private static final String PREF_NODES_KNOWN = "watch_nodes_known";
+    // Comma separated, since string sets need API 11
+    private static final String PREF_NODES = "watch_nodes";
+    // Prefix of the payload version a node last acknowledged
+    private static final String PREF_NODE_VERSION = "watch_node_version:";
+    private static final String PREF_PUSH_PENDING = "watch_push_pending";
+
+    private final SharedPreferences mPrefs;
+
+    WatchNodeTracker(Context context) {
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+    }
+
+    /**
+     * @return whether the connected watches have been reported since the app was installed.
+     * Until they have, nothing can be skipped for lack of a watch.
+     */
+    boolean isKnown() {
+        return mPrefs.getBoolean(PREF_NODES_KNOWN, false);
+    }
+
+    boolean hasConnectedNodes() {
+        return !getConnectedNodes().isEmpty();
+    }
+
+    /**
+     * Replaces the connected watches.
+     *
+     * @return the watches that were not connected before
+     */
+    Set<String> setConnectedNodes(Set<String> nodeIds) {
+        Set<String> added = new HashSet<>(nodeIds);
+        added.removeAll(getConnectedNodes());
+        mPrefs.edit()
+                .putBoolean(PREF_NODES_KNOWN, true)
+                .putString(PREF_NODES, TextUtils.join(",", nodeIds))
+                .apply();
+        return added;
+    }
+
+    /**
+     * Records that a watch shows a version of the payload.
+     */
+    void acknowledge(String nodeId, long version) {
+        mPrefs.edit().putLong(PREF_NODE_VERSION + nodeId, version).apply();
+    }
+
+    /**
+     * @return whether every connected watch has acknowledged the version; false if none is
+     * connected
+     */
+    boolean allNodesShow(long version) {
+        Set<String> nodeIds = getConnectedNodes();
+        if (nodeIds.isEmpty()) {
+            return false;
+        }
+        for (String nodeId : nodeIds) {
+            if (mPrefs.getLong(PREF_NODE_VERSION + nodeId, 0) != version) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Notes that a push was skipped for lack of a watch. However many are skipped, one push is
+     * made when a watch connects again.
+     */
+    void setPushPending() {
+        mPrefs.edit().putBoolean(PREF_PUSH_PENDING, true).apply();
+    }
+
+    /**
+     * @return whether a push was skipped since the last call
+     */
+    boolean takePushPending() {
+        boolean pending = mPrefs.getBoolean(PREF_PUSH_PENDING, false);
+        if (pending) {
+            mPrefs.edit().remove(PREF_PUSH_PENDING).apply();
+        }
+        return pending;
+    }
+
+    private Set<String> getConnectedNodes() {
+        String nodeIds = mPrefs.getString(PREF_NODES, "");
+        if (nodeIds.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(Arrays.asList(nodeIds.split(",")));
+    }
+}
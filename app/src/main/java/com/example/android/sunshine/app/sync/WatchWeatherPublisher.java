@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArtService;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.core.ForecastPayload;
+import com.example.android.sunshine.core.WeatherDates;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.CapabilityApi;
+import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends today's weather and the coming days' forecast to the watch face as a DataItem.
+ *
+ * The payload is the condition id and the temperatures in Celsius, plus whether the user wants
+ * them in metric, and the following days packed by {@link ForecastPayload}. The watch formats
+ * them itself and draws the condition with the art it bundles, so a normal update is a few dozen
+ * bytes. Only when the user has picked a remote art pack is the art itself attached. It is
+ * attached to every payload, since putting the item replaces the one before, and the Data Layer
+ * doesn't send an asset again that the watch already has. The payload also carries the art's
+ * SHA-1 hash, so that the watch can skip decoding art it already shows.
+ *
+ * A DataItem that is put again with the same content is not sent to the watch, so the payload
+ * carries no timestamp. Each sync would otherwise wake the watch's radio and redraw its face for
+ * nothing. A fingerprint of the last payload sent on each path is kept, so an unchanged forecast
+ * is not even put, and only a change is sent urgently.
+ *
+ * Every payload carries a version derived from that fingerprint. A watch that asks for the
+ * weather by message sends the version it shows, and is answered from the stored forecast with
+ * an empty reply when it is up to date, or with the payload otherwise. See
+ * {@link #answer(GoogleApiClient, long)}.
+ *
+ * Watches acknowledge the versions they show, and {@link WatchNodeTracker} keeps track of those
+ * and of which watches are connected. Nothing is built or pushed while no watch is connected,
+ * and nothing is pushed once every connected watch shows the payload.
+ *
+ * Does network and disk I/O and blocks on the Wearable API, so must not run on the main thread.
+ */
+class WatchWeatherPublisher {
+    private static final String LOG_TAG = WatchWeatherPublisher.class.getSimpleName();
+
+    static final String WEARABLE_PATH = "/sunshine_watchface";
+    private static final String TIME_KEY = "time";
+    private static final String WEATHER_ID_KEY = "weather_id";
+    private static final String HIGH_KEY = "high";
+    private static final String LOW_KEY = "low";
+    private static final String METRIC_KEY = "metric";
+    private static final String ART_KEY = "art_key";
+    private static final String ART_HASH_KEY = "art_hash";
+    static final String VERSION_KEY = "version";
+    private static final String FORECAST_KEY = "forecast";
+
+    // Days after today sent for the watch's forecast strip
+    private static final int FORECAST_DAYS = 4;
+
+    // Prefix of the fingerprint of the last payload put on a path
+    private static final String PREF_SENT_FINGERPRINT = "watch_sent_fingerprint:";
+
+    private static final int PUSH_SENT = 0;
+    private static final int PUSH_SUPPRESSED = 1;
+    private static final int PUSH_FAILED = 2;
+
+    // Pushes since the process started, for the log
+    private static int sPushesSent;
+    private static int sPushesSuppressed;
+
+    private static final long TIMEOUT_SECONDS = 30;
+    // Comfortably more than the art is drawn at on any watch face
+    private static final int ART_SIZE_PX = 128;
+
+    private static final String[] WATCH_WEATHER_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    private final Context mContext;
+    // Identifies what the watch will show for the request being built
+    private String mFingerprint;
+    private long mVersion;
+    // Set when the request being built carries custom art
+    private boolean mHasCustomArt;
+
+    WatchWeatherPublisher(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Makes the next payload be sent in full even if nothing changed, e.g. because the watch
+     * asked for an update and may have lost what it had.
+     */
+    static void forgetSentState(Context context) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .remove(PREF_SENT_FINGERPRINT + WEARABLE_PATH)
+                .apply();
+    }
+
+    void publish() {
+        WatchNodeTracker tracker = new WatchNodeTracker(mContext);
+        if (tracker.isKnown() && !tracker.hasConnectedNodes()) {
+            tracker.setPushPending();
+            Log.d(LOG_TAG, "No watch connected, sending when one connects. "
+                    + countPush(PUSH_SUPPRESSED));
+            return;
+        }
+        PutDataMapRequest putDataMapReq = buildRequest();
+        if (putDataMapReq == null) {
+            return;
+        }
+        String sentFingerprint = getSentFingerprint();
+        if (isShown(tracker, sentFingerprint)) {
+            Log.d(LOG_TAG, "Watch already shows this weather, not sending. "
+                    + countPush(PUSH_SUPPRESSED));
+            return;
+        }
+
+        GoogleApiClient googleApiClient = new GoogleApiClient.Builder(mContext)
+                .addApi(Wearable.API)
+                .build();
+        ConnectionResult connectionResult =
+                googleApiClient.blockingConnect(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!connectionResult.isSuccess()) {
+            Log.w(LOG_TAG, "Failed to connect to GoogleApiClient: " + connectionResult);
+            return;
+        }
+        try {
+            if (!tracker.isKnown()) {
+                // If the watches can't be listed, send as before
+                Set<String> nodeIds = getConnectedWatches(googleApiClient);
+                if (nodeIds != null) {
+                    tracker.setConnectedNodes(nodeIds);
+                }
+                if (nodeIds != null && nodeIds.isEmpty()) {
+                    tracker.setPushPending();
+                    Log.d(LOG_TAG, "No watch connected, sending when one connects. "
+                            + countPush(PUSH_SUPPRESSED));
+                    return;
+                }
+            }
+            put(googleApiClient, putDataMapReq, sentFingerprint == null);
+        } finally {
+            googleApiClient.disconnect();
+        }
+    }
+
+    /**
+     * @param sentFingerprint the fingerprint of the payload last put, or null
+     * @return whether the payload last built is shown by every connected watch already, or was
+     * put before and so would not be delivered again
+     */
+    boolean isShown(WatchNodeTracker tracker, String sentFingerprint) {
+        return tracker.allNodesShow(mVersion) || mFingerprint.equals(sentFingerprint);
+    }
+
+    String getSentFingerprint() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext)
+                .getString(PREF_SENT_FINGERPRINT + WEARABLE_PATH, null);
+    }
+
+    /**
+     * Records that the payload last built was put, so that it isn't put again unchanged.
+     */
+    void setSent() {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(PREF_SENT_FINGERPRINT + WEARABLE_PATH, mFingerprint)
+                .apply();
+    }
+
+    /**
+     * Answers a watch's request for the weather from the stored forecast.
+     *
+     * @param googleApiClient a connected client, needed if new custom art has to be put
+     * @param watchVersion the version of the payload the watch shows, or 0 if it has none
+     * @return an empty reply if the watch is up to date, otherwise the payload as a DataMap byte
+     * array, without the art. Custom art is put in the DataItem instead, since assets only travel
+     * there, and the watch reads it from there. Null if there is no forecast for today to answer
+     * with.
+     */
+    byte[] answer(GoogleApiClient googleApiClient, long watchVersion) {
+        PutDataMapRequest putDataMapReq = buildRequest();
+        if (putDataMapReq == null) {
+            return null;
+        }
+        if (mVersion == watchVersion) {
+            return new byte[0];
+        }
+        if (mHasCustomArt) {
+            // The reply only names the art, and an unchanged item isn't delivered again, so
+            // timestamp it for the watch to get the asset. The asset itself isn't sent again if
+            // the watch has it already.
+            put(googleApiClient, putDataMapReq, true);
+        }
+        DataMap reply = new DataMap();
+        reply.putAll(putDataMapReq.getDataMap());
+        reply.remove(ART_KEY);
+        reply.remove(TIME_KEY);
+        return reply.toByteArray();
+    }
+
+    /**
+     * @return the reachable watches with the watch face, or null if they can't be listed
+     */
+    private static Set<String> getConnectedWatches(GoogleApiClient googleApiClient) {
+        CapabilityApi.GetCapabilityResult result = Wearable.CapabilityApi
+                .getCapability(googleApiClient, WatchNodeTracker.CAPABILITY,
+                        CapabilityApi.FILTER_REACHABLE)
+                .await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!result.getStatus().isSuccess()) {
+            return null;
+        }
+        return getNodeIds(result.getCapability());
+    }
+
+    static Set<String> getNodeIds(CapabilityInfo capabilityInfo) {
+        Set<String> nodeIds = new HashSet<>();
+        for (Node node : capabilityInfo.getNodes()) {
+            nodeIds.add(node.getId());
+        }
+        return nodeIds;
+    }
+
+    /**
+     * @param forceDelivery whether to timestamp the item, so that it is delivered even if the
+     *                      watch holds an identical one
+     */
+    private void put(GoogleApiClient googleApiClient, PutDataMapRequest putDataMapReq,
+                     boolean forceDelivery) {
+        if (forceDelivery) {
+            putDataMapReq.getDataMap().putLong(TIME_KEY, System.currentTimeMillis());
+        }
+        PutDataRequest request = putDataMapReq.asPutDataRequest();
+        // Either what the watch shows changes, or the watch is waiting for it
+        request.setUrgent();
+
+        DataApi.DataItemResult result = Wearable.DataApi.putDataItem(googleApiClient, request)
+                .await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        boolean success = result.getStatus().isSuccess();
+        Log.d(LOG_TAG, "Sending weather to the watch was successful: " + success
+                + (mHasCustomArt ? ", with custom art. " : ". ")
+                + countPush(success ? PUSH_SENT : PUSH_FAILED));
+        if (success) {
+            setSent();
+        }
+    }
+
+    private static synchronized String countPush(int outcome) {
+        if (outcome == PUSH_SENT) {
+            sPushesSent++;
+        } else if (outcome == PUSH_SUPPRESSED) {
+            sPushesSuppressed++;
+        }
+        return "Pushes sent: " + sPushesSent + ", suppressed: " + sPushesSuppressed;
+    }
+
+    /**
+     * Builds the payload from the stored forecast, and with it the fingerprint and version the
+     * other methods compare.
+     *
+     * @return the request, or null if there is no forecast for today
+     */
+    PutDataMapRequest buildRequest() {
+        String locationQuery = Utility.getPreferredLocation(mContext);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationQuery, today);
+        Cursor cursor = mContext.getContentResolver().query(weatherUri, WATCH_WEATHER_PROJECTION,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        int weatherId;
+        double high;
+        double low;
+        int[] epochDays = new int[FORECAST_DAYS];
+        int[] weatherIds = new int[FORECAST_DAYS];
+        double[] lows = new double[FORECAST_DAYS];
+        double[] highs = new double[FORECAST_DAYS];
+        int days = 0;
+        TimeZone timeZone = TimeZone.getDefault();
+        try {
+            if (!cursor.moveToFirst() || cursor.getLong(INDEX_DATE) != today) {
+                return null;
+            }
+            weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            high = cursor.getDouble(INDEX_MAX_TEMP);
+            low = cursor.getDouble(INDEX_MIN_TEMP);
+            while (days < FORECAST_DAYS && cursor.moveToNext()) {
+                epochDays[days] = WeatherDates.toEpochDay(cursor.getLong(INDEX_DATE), timeZone);
+                weatherIds[days] = cursor.getInt(INDEX_WEATHER_ID);
+                lows[days] = cursor.getDouble(INDEX_MIN_TEMP);
+                highs[days] = cursor.getDouble(INDEX_MAX_TEMP);
+                days++;
+            }
+        } finally {
+            cursor.close();
+        }
+        byte[] forecast = ForecastPayload.encode(epochDays, weatherIds, lows, highs, days);
+
+        PutDataMapRequest putDataMapReq = PutDataMapRequest.create(WEARABLE_PATH);
+        DataMap dataMap = putDataMapReq.getDataMap();
+        dataMap.putInt(WEATHER_ID_KEY, weatherId);
+        dataMap.putDouble(HIGH_KEY, high);
+        dataMap.putDouble(LOW_KEY, low);
+        dataMap.putByteArray(FORECAST_KEY, forecast);
+        boolean metric = Utility.isMetric(mContext);
+        dataMap.putBoolean(METRIC_KEY, metric);
+        String artHash = null;
+        mHasCustomArt = false;
+        if (!Utility.usingLocalGraphics(mContext)) {
+            artHash = putCustomArt(dataMap, weatherId);
+        }
+        mFingerprint = weatherId + "|" + high + "|" + low + "|" + metric + "|" + artHash
+                + "|" + sha1(forecast);
+        mVersion = toVersion(mFingerprint);
+        dataMap.putLong(VERSION_KEY, mVersion);
+        return putDataMapReq;
+    }
+
+    /**
+     * @return the hash of the art, or null if it could not be loaded
+     */
+    private String putCustomArt(DataMap dataMap, int weatherId) {
+        // Already a PNG at the size sent, so it needs no encoding here
+        byte[] artBytes = WeatherArtService.getInstance(mContext).getArtPng(
+                Utility.getPreferredArtPack(mContext), weatherId, ART_SIZE_PX, ART_SIZE_PX);
+        if (artBytes == null) {
+            // The watch falls back to its own art for the condition
+            return null;
+        }
+
+        String artHash = sha1(artBytes);
+        dataMap.putString(ART_HASH_KEY, artHash);
+        dataMap.putAsset(ART_KEY, Asset.createFromBytes(artBytes));
+        mHasCustomArt = true;
+        return artHash;
+    }
+
+    /**
+     * @return the first 8 bytes of the fingerprint's SHA-1, never 0, which stands for no data
+     */
+    private static long toVersion(String fingerprint) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(fingerprint.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        long version = 0;
+        for (int i = 0; i < 8; i++) {
+            version = (version << 8) | (digest[i] & 0xff);
+        }
+        return version != 0 ? version : 1;
+    }
+
+    private static String sha1(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
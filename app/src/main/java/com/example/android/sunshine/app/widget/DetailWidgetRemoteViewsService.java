@@ -8,20 +8,22 @@ import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
 import android.util.Log;
+import android.util.SparseIntArray;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArtService;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import java.util.concurrent.ExecutionException;
-
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
+ *
+ * Remote art comes from {@link WeatherArtService} at the size of the row icon. Every row's
+ * RemoteViews carries its own copy of the bitmap across the binder, so once the rows of a dataset
+ * hold {@link #MAX_ART_PAYLOAD_BYTES} of art, the rest fall back to the bundled icons.
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
@@ -42,10 +44,20 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    // Well under the 1MB binder transaction buffer the widget host shares with other calls
+    private static final int MAX_ART_PAYLOAD_BYTES = 512 * 1024;
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            // Read once per dataset, as every row needs them
+            private String location;
+            private String artPack;
+            private int iconSize;
+            // Bytes of art each row was given, and their total
+            private final SparseIntArray rowArtBytes = new SparseIntArray();
+            private int artPayloadBytes;
 
             @Override
             public void onCreate() {
@@ -62,7 +74,12 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                artPack = Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)
+                        ? null : Utility.getPreferredArtPack(DetailWidgetRemoteViewsService.this);
+                iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+                rowArtBytes.clear();
+                artPayloadBytes = 0;
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
                         .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
                 data = getContentResolver().query(weatherForLocationUri,
@@ -96,20 +113,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         R.layout.widget_detail_list_item);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
+                Bitmap weatherArtImage = artPack != null ? getRowArt(position, weatherId) : null;
                 String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
                 String formattedDate = Utility.getFriendlyDayString(
@@ -134,16 +138,39 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
+                        location,
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
                 return views;
             }
 
+            /**
+             * @return the art for the row, or null if it should use the bundled icon because
+             * the art can't be loaded or the rows already carry as much art as they may
+             */
+            private Bitmap getRowArt(int position, int weatherId) {
+                Bitmap art = WeatherArtService.getInstance(DetailWidgetRemoteViewsService.this)
+                        .getArt(artPack, weatherId, iconSize, iconSize);
+                if (art == null) {
+                    return null;
+                }
+
+                // Rows are fetched again as the list scrolls, so only count each once
+                int bytes = art.getRowBytes() * art.getHeight();
+                artPayloadBytes -= rowArtBytes.get(position);
+                if (artPayloadBytes + bytes > MAX_ART_PAYLOAD_BYTES) {
+                    rowArtBytes.delete(position);
+                    Log.d(LOG_TAG, "Widget art payload limit reached, using the icon for row "
+                            + position);
+                    return null;
+                }
+                rowArtBytes.put(position, bytes);
+                artPayloadBytes += bytes;
+                return art;
+            }
+
             @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
             private void setRemoteContentDescription(RemoteViews views, String description) {
                 views.setContentDescription(R.id.widget_icon, description);
@@ -35,9 +35,23 @@ import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
- * IntentService which handles updating all Today widgets with the latest data
+ * IntentService which handles updating Today widgets with the latest data: those in
+ * {@link AppWidgetManager#EXTRA_APPWIDGET_IDS}, or all of them. Widgets of the same layout share
+ * one RemoteViews and one update. {@link WidgetUpdateCoordinator} decides which widgets need
+ * updating after the data changes.
  */
 public class TodayWidgetIntentService extends IntentService {
+
+    // Indices into LAYOUT_IDS, by increasing width
+    private static final int LAYOUT_SMALL = 0;
+    private static final int LAYOUT_DEFAULT = 1;
+    private static final int LAYOUT_LARGE = 2;
+    private static final int[] LAYOUT_IDS = {
+            R.layout.widget_today_small,
+            R.layout.widget_today,
+            R.layout.widget_today_large
+    };
+
     private static final String[] FORECAST_COLUMNS = {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
@@ -56,10 +70,13 @@ public class TodayWidgetIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        // Retrieve all of the Today widget ids: these are the widgets we need to update
+        // Retrieve the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
-        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
-                TodayWidgetProvider.class));
+        int[] appWidgetIds = intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
+        if (appWidgetIds == null) {
+            appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
+                    TodayWidgetProvider.class));
+        }
 
         // Get today's data from the ContentProvider
         String location = Utility.getPreferredLocation(this);
@@ -85,21 +102,41 @@ public class TodayWidgetIntentService extends IntentService {
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
         data.close();
 
-        // Perform this loop procedure for each Today widget
-        for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
+        // Sort the widgets into layouts by width, so each layout is built once
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        int[] widgetLayouts = new int[appWidgetIds.length];
+        int[] layoutCounts = new int[LAYOUT_IDS.length];
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetIds[i], defaultWidth);
             if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
+                widgetLayouts[i] = LAYOUT_LARGE;
             } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
+                widgetLayouts[i] = LAYOUT_DEFAULT;
             } else {
-                layoutId = R.layout.widget_today_small;
+                widgetLayouts[i] = LAYOUT_SMALL;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+            layoutCounts[widgetLayouts[i]]++;
+        }
+        int[][] layoutWidgetIds = new int[LAYOUT_IDS.length][];
+        for (int layout = 0; layout < LAYOUT_IDS.length; layout++) {
+            layoutWidgetIds[layout] = new int[layoutCounts[layout]];
+            layoutCounts[layout] = 0;
+        }
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            int layout = widgetLayouts[i];
+            layoutWidgetIds[layout][layoutCounts[layout]++] = appWidgetIds[i];
+        }
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+
+        for (int layout = 0; layout < LAYOUT_IDS.length; layout++) {
+            if (layoutWidgetIds[layout].length == 0) {
+                continue;
+            }
+            RemoteViews views = new RemoteViews(getPackageName(), LAYOUT_IDS[layout]);
 
             // Add the data to the RemoteViews
             views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
@@ -110,29 +147,27 @@ public class TodayWidgetIntentService extends IntentService {
             views.setTextViewText(R.id.widget_description, description);
             views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
             views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to update every widget with this layout at once
+            appWidgetManager.updateAppWidget(layoutWidgetIds[layout], views);
         }
     }
 
-    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
+    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId,
+                               int defaultWidth) {
         // Prior to Jelly Bean, widgets were always their default size
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
-            return getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+            return defaultWidth;
         }
         // For Jelly Bean and higher devices, widgets can be resized - the current size can be
         // retrieved from the newly added App Widget Options
-        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId);
+        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId, defaultWidth);
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
+    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId,
+                                          int defaultWidth) {
         Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
         if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
             int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
@@ -141,7 +176,7 @@ public class TodayWidgetIntentService extends IntentService {
             return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
                     displayMetrics);
         }
-        return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        return defaultWidth;
     }
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
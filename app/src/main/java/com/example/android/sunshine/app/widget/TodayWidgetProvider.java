@@ -28,26 +28,35 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
  * Provider for a horizontally expandable widget showing today's weather.
  *
  * Delegates widget updating to {@link TodayWidgetIntentService} to ensure that
- * data retrieval is done on a background thread
+ * data retrieval is done on a background thread. Data updates go through
+ * {@link WidgetUpdateCoordinator}, which only updates the widgets they change.
  */
 public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, appWidgetIds));
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The widget may now need another layout
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, new int[] {appWidgetId}));
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        WidgetUpdateCoordinator.forget(context, appWidgetIds);
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            WidgetUpdateCoordinator.scheduleUpdate(context);
         }
     }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Updates the widgets after the weather data changes, for both widget providers.
+ *
+ * Data updates often come in bursts, as when a sync is followed by a location change, so they
+ * are debounced: each one pushes back a single pending update until none has come for
+ * {@link #DEBOUNCE_MS}. The update then hashes the fields each kind of widget displays and only
+ * updates the widgets whose hash differs from the one they were last updated with.
+ */
+public class WidgetUpdateCoordinator extends IntentService {
+    private static final String LOG_TAG = WidgetUpdateCoordinator.class.getSimpleName();
+
+    private static final long DEBOUNCE_MS = 2 * 1000;
+
+    // Prefix of the hash of the content a widget was last updated with
+    private static final String PREF_WIDGET_HASH = "widget_content_hash:";
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+
+    private static int sWidgetsUpdated;
+    private static int sWidgetsSkipped;
+
+    public WidgetUpdateCoordinator() {
+        super("WidgetUpdateCoordinator");
+    }
+
+    /**
+     * Updates the widgets once no further call has come for {@link #DEBOUNCE_MS}.
+     */
+    public static void scheduleUpdate(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        // Setting an alarm for the same PendingIntent replaces the one already set. The alarm
+        // doesn't wake the device, since nobody sees the widgets while it sleeps.
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + DEBOUNCE_MS,
+                PendingIntent.getService(context, 0,
+                        new Intent(context, WidgetUpdateCoordinator.class),
+                        PendingIntent.FLAG_UPDATE_CURRENT));
+    }
+
+    /**
+     * Forgets the content of widgets that were removed.
+     */
+    static void forget(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(context).edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(PREF_WIDGET_HASH + appWidgetId);
+        }
+        editor.apply();
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        String location = Utility.getPreferredLocation(this);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, today);
+        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (data == null) {
+            return;
+        }
+        int todayHash;
+        int detailHash;
+        try {
+            if (!data.moveToFirst()) {
+                return;
+            }
+            // The Today widget shows the first day, formatted in the user's units
+            String todayContent = getDayContent(data);
+            todayHash = todayContent.hashCode();
+
+            // The detail widget shows every day, named relative to today, and the art pack
+            StringBuilder detailContent = new StringBuilder()
+                    .append(today).append('|')
+                    .append(Utility.getPreferredArtPack(this)).append('|')
+                    .append(location).append('|')
+                    .append(todayContent);
+            while (data.moveToNext()) {
+                detailContent.append('|').append(getDayContent(data));
+            }
+            detailHash = detailContent.toString().hashCode();
+        } finally {
+            data.close();
+        }
+
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        SharedPreferences.Editor editor = prefs.edit();
+
+        int[] todayIds = getChangedWidgetIds(appWidgetManager, TodayWidgetProvider.class,
+                todayHash, prefs, editor);
+        if (todayIds.length > 0) {
+            startService(new Intent(this, TodayWidgetIntentService.class)
+                    .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, todayIds));
+        }
+
+        int[] detailIds = new int[0];
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            detailIds = getChangedWidgetIds(appWidgetManager, DetailWidgetProvider.class,
+                    detailHash, prefs, editor);
+            if (detailIds.length > 0) {
+                notifyDetailWidgets(appWidgetManager, detailIds);
+            }
+        }
+        editor.apply();
+
+        Log.d(LOG_TAG, "Updated " + todayIds.length + " Today and " + detailIds.length
+                + " detail widgets. " + countUpdates(todayIds.length + detailIds.length));
+    }
+
+    private String getDayContent(Cursor data) {
+        return data.getLong(INDEX_DATE) + "|" + data.getInt(INDEX_WEATHER_ID) + "|"
+                + data.getString(INDEX_SHORT_DESC) + "|"
+                + Utility.formatTemperature(this, data.getDouble(INDEX_MAX_TEMP)) + "|"
+                + Utility.formatTemperature(this, data.getDouble(INDEX_MIN_TEMP));
+    }
+
+    /**
+     * @return the provider's widgets last updated with content other than the hash's, which are
+     * recorded as showing it from now on
+     */
+    private int[] getChangedWidgetIds(AppWidgetManager appWidgetManager, Class<?> provider,
+                                      int hash, SharedPreferences prefs,
+                                      SharedPreferences.Editor editor) {
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this, provider));
+        int[] changed = new int[appWidgetIds.length];
+        int count = 0;
+        for (int appWidgetId : appWidgetIds) {
+            String key = PREF_WIDGET_HASH + appWidgetId;
+            if (prefs.contains(key) && prefs.getInt(key, 0) == hash) {
+                continue;
+            }
+            editor.putInt(key, hash);
+            changed[count++] = appWidgetId;
+        }
+        synchronized (WidgetUpdateCoordinator.class) {
+            sWidgetsSkipped += appWidgetIds.length - count;
+        }
+        int[] result = new int[count];
+        System.arraycopy(changed, 0, result, 0, count);
+        return result;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void notifyDetailWidgets(AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+    }
+
+    private static synchronized String countUpdates(int updated) {
+        sWidgetsUpdated += updated;
+        return "Widget updates: " + sWidgetsUpdated + ", skipped: " + sWidgetsSkipped;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Checks that the bulk monochrome conversion gives exactly the pixels the original per-pixel
+    HSV loop gave, and logs how long each takes at watch face sizes.
+ */
+public class TestMonochromeArt extends AndroidTestCase {
+    private static final String LOG_TAG = TestMonochromeArt.class.getSimpleName();
+
+    private static final int[] BENCHMARK_SIZES = {64, 128, 0};
+    private static final int BENCHMARK_RUNS = 5;
+
+    private Bitmap mArt;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mArt = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_clear);
+    }
+
+    public void testMatchesPerPixelConversion() {
+        Bitmap expected = referenceMonochrome(mArt);
+        Bitmap actual = MonochromeArt.convert(mArt, 0);
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int x = 0; x < expected.getWidth(); x++) {
+            for (int y = 0; y < expected.getHeight(); y++) {
+                assertEquals("Error: pixel mismatch at " + x + "," + y,
+                        expected.getPixel(x, y), actual.getPixel(x, y));
+            }
+        }
+    }
+
+    public void testScalesDownToSize() {
+        Bitmap monochrome = MonochromeArt.convert(mArt, 64);
+        assertEquals(64, Math.max(monochrome.getWidth(), monochrome.getHeight()));
+    }
+
+    public void testCachedPerArtAndSize() {
+        Bitmap first = MonochromeArt.get("test_art", mArt, 64);
+        assertSame("Error: same art and size converted twice",
+                first, MonochromeArt.get("test_art", mArt, 64));
+        assertNotSame("Error: different size served from cache",
+                first, MonochromeArt.get("test_art", mArt, 128));
+    }
+
+    public void testBenchmark() {
+        for (int size : BENCHMARK_SIZES) {
+            Bitmap art = size == 0 ? mArt : Bitmap.createScaledBitmap(mArt, size, size, true);
+            long referenceMs = 0;
+            long bulkMs = 0;
+            for (int i = 0; i < BENCHMARK_RUNS; i++) {
+                long start = SystemClock.elapsedRealtime();
+                referenceMonochrome(art);
+                referenceMs += SystemClock.elapsedRealtime() - start;
+
+                start = SystemClock.elapsedRealtime();
+                MonochromeArt.convert(art, 0);
+                bulkMs += SystemClock.elapsedRealtime() - start;
+            }
+            Log.i(LOG_TAG, art.getWidth() + "x" + art.getHeight()
+                    + ": per-pixel " + referenceMs / BENCHMARK_RUNS + "ms"
+                    + ", bulk " + bulkMs / BENCHMARK_RUNS + "ms");
+        }
+    }
+
+    // The conversion as SunshineWatchFace.Engine.toMonochrome did it
+    private static Bitmap referenceMonochrome(Bitmap bitmap) {
+        Bitmap bwBitmap = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.RGB_565);
+        float[] hsv = new float[3];
+        for (int col = 0; col < bitmap.getWidth(); col++) {
+            for (int row = 0; row < bitmap.getHeight(); row++) {
+                Color.colorToHSV(bitmap.getPixel(col, row), hsv);
+                if (hsv[2] > 0.5f) {
+                    bwBitmap.setPixel(col, row, 0xffffffff);
+                } else {
+                    bwBitmap.setPixel(col, row, 0xff000000);
+                }
+            }
+        }
+        return bwBitmap;
+    }
+}
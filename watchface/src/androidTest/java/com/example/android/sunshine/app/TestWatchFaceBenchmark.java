@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/*
+    Renders the watch face offscreen in every combination of screen shape, mode and weather
+    data the engine can put it in, the way Engine.onDraw does, and logs per-frame time,
+    allocations and overdraw for each. Filter the log on this class's name to compare runs.
+    Fails if a frame allocates or paints the screen over too many times, so that rendering
+    regressions show up here before they show up on a watch.
+ */
+public class TestWatchFaceBenchmark extends AndroidTestCase {
+    private static final String LOG_TAG = TestWatchFaceBenchmark.class.getSimpleName();
+
+    private static final int SQUARE_SIZE = 280;
+    private static final int ROUND_SIZE = 320;
+    // A whole minute in UTC, so that the frames after it stay within the same displayed minute
+    private static final long MINUTE_START = 1500000000000L;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final int FRAMES = 50;
+
+    // Times the screen area painted in one frame. A cached frame is one layer blit plus the
+    // time; drawing every element directly adds the text and art on top of the background.
+    private static final float MAX_OVERDRAW = 2f;
+
+    private static final String[] MODES = {"interactive", "ambient", "ambient low-bit"};
+    private static final String[] DATA = {"no weather", "weather", "weather and forecast"};
+
+    private Bitmap mArt;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mArt = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_clear);
+    }
+
+    public void testRenderingCost() {
+        Log.i(LOG_TAG, "shape, mode, data, layer cache: us/frame, allocations/frame, overdraw");
+        for (boolean round : new boolean[] {false, true}) {
+            for (int mode = 0; mode < MODES.length; mode++) {
+                for (int data = 0; data < DATA.length; data++) {
+                    for (boolean cache : new boolean[] {true, false}) {
+                        benchmark(round, mode, data, cache);
+                    }
+                }
+            }
+        }
+    }
+
+    private void benchmark(boolean round, int mode, int data, boolean cache) {
+        int size = round ? ROUND_SIZE : SQUARE_SIZE;
+        WatchFaceRenderer renderer = createRenderer(size, round, mode, data, cache);
+        Bitmap target = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+
+        // The first frame formats the time and renders the layer, as after any change
+        renderer.draw(canvas, MINUTE_START);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 1; i <= FRAMES; i++) {
+            renderer.draw(canvas, MINUTE_START + i * 1000L);
+        }
+        long nanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        // Measured in a separate pass, since measuring allocates
+        OverdrawCanvas overdrawCanvas = new OverdrawCanvas(target);
+        renderer.draw(overdrawCanvas, MINUTE_START + (FRAMES + 1) * 1000L);
+        float overdraw = overdrawCanvas.getOverdraw();
+
+        String scenario = (round ? "round" : "square") + ", " + MODES[mode] + ", " + DATA[data]
+                + ", " + (cache ? "on" : "off");
+        Log.i(LOG_TAG, scenario + ": "
+                + String.format(Locale.US, "%.1f", nanos / 1000f / FRAMES) + ", "
+                + String.format(Locale.US, "%.2f", (float) allocations / FRAMES) + ", "
+                + String.format(Locale.US, "%.2f", overdraw));
+
+        assertEquals("Error: frames allocated for " + scenario, 0, allocations);
+        assertTrue("Error: overdraw of " + overdraw + " for " + scenario,
+                overdraw <= MAX_OVERDRAW);
+    }
+
+    private WatchFaceRenderer createRenderer(int size, boolean round, int mode, int data,
+                                             boolean cache) {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(mContext);
+        renderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        renderer.setSurfaceSize(size, size);
+        renderer.setRound(round);
+        renderer.setLayerCacheEnabled(cache);
+        if (mode != 0) {
+            renderer.setAmbient(true, mode == 2);
+        }
+        if (data != 0) {
+            renderer.setWeather("25°", "16°", mArt,
+                    MonochromeArt.convert(mArt, renderer.getArtSize()));
+        }
+        if (data == 2) {
+            int today = (int) (MINUTE_START / DAY_MS);
+            renderer.setForecast(new int[] {today + 1, today + 2, today + 3},
+                    new String[] {"24° 15°", "22° 14°", "23° 15°"},
+                    new Bitmap[] {mArt, mArt, mArt});
+        }
+        return renderer;
+    }
+
+    /**
+     * Adds up the screen area each draw call covers, as an estimate of how many times each pixel
+     * is painted. Only the calls the renderer makes are measured.
+     */
+    private static class OverdrawCanvas extends Canvas {
+        private final float mScreenArea;
+        private final Rect mTextBounds = new Rect();
+        private float mPaintedArea;
+
+        OverdrawCanvas(Bitmap bitmap) {
+            super(bitmap);
+            mScreenArea = bitmap.getWidth() * bitmap.getHeight();
+        }
+
+        float getOverdraw() {
+            return mPaintedArea / mScreenArea;
+        }
+
+        private void add(float left, float top, float right, float bottom) {
+            float width = Math.min(right, getWidth()) - Math.max(left, 0);
+            float height = Math.min(bottom, getHeight()) - Math.max(top, 0);
+            if (width > 0 && height > 0) {
+                mPaintedArea += width * height;
+            }
+        }
+
+        @Override
+        public void drawColor(int color) {
+            add(0, 0, getWidth(), getHeight());
+            super.drawColor(color);
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+            add(left, top, right, bottom);
+            super.drawRect(left, top, right, bottom, paint);
+        }
+
+        @Override
+        public void drawRect(Rect rect, Paint paint) {
+            add(rect.left, rect.top, rect.right, rect.bottom);
+            super.drawRect(rect, paint);
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+            add(left, top, left + bitmap.getWidth(), top + bitmap.getHeight());
+            super.drawBitmap(bitmap, left, top, paint);
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+            add(dst.left, dst.top, dst.right, dst.bottom);
+            super.drawBitmap(bitmap, src, dst, paint);
+        }
+
+        @Override
+        public void drawText(String text, float x, float y, Paint paint) {
+            paint.getTextBounds(text, 0, text.length(), mTextBounds);
+            float width = mTextBounds.width();
+            float left = x + mTextBounds.left;
+            if (paint.getTextAlign() == Paint.Align.CENTER) {
+                left -= width / 2;
+            } else if (paint.getTextAlign() == Paint.Align.RIGHT) {
+                left -= width;
+            }
+            add(left, y + mTextBounds.top, left + width, y + mTextBounds.bottom);
+            super.drawText(text, x, y, paint);
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+            float halfStroke = Math.max(paint.getStrokeWidth(), 1f) / 2;
+            add(Math.min(startX, stopX) - halfStroke, Math.min(startY, stopY) - halfStroke,
+                    Math.max(startX, stopX) + halfStroke, Math.max(startY, stopY) + halfStroke);
+            super.drawLine(startX, startY, stopX, stopY, paint);
+        }
+    }
+}
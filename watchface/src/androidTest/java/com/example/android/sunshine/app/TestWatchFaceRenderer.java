@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.util.TimeZone;
+
+/*
+    Draws the watch face onto an offscreen canvas and checks that frames within the same minute
+    neither allocate nor re-format any text, and that the layer of static elements is only
+    rendered again when one of them changes.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    private static final int SIZE = 320;
+    // A whole minute in UTC, so that the seconds after it stay within the same displayed minute
+    private static final long MINUTE_START = 1500000000000L;
+    private static final int FRAMES = 30;
+
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext);
+        mRenderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        mRenderer.setSurfaceSize(SIZE, SIZE);
+        mRenderer.setWeather("25°", "16°", null, null);
+        // Tomorrow and the two days after, so the whole forecast strip is drawn
+        int today = (int) (MINUTE_START / (24 * 60 * 60 * 1000L));
+        mRenderer.setForecast(new int[] {today + 1, today + 2, today + 3},
+                new String[] {"24° 15°", "22° 14°", "23° 15°"}, new Bitmap[3]);
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    public void testInteractiveDrawDoesNotAllocate() {
+        mRenderer.setAmbient(false, false);
+        assertEquals("Error: interactive frames allocated", 0, countDrawAllocations());
+    }
+
+    public void testAmbientDrawDoesNotAllocate() {
+        mRenderer.setAmbient(true, true);
+        assertEquals("Error: ambient frames allocated", 0, countDrawAllocations());
+    }
+
+    public void testTextOnlyBuiltWhenMinuteChanges() {
+        mRenderer.draw(mCanvas, MINUTE_START);
+        int builds = mRenderer.getTextBuildCount();
+        for (int i = 1; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, MINUTE_START + i * 1000L);
+        }
+        assertEquals("Error: text rebuilt within a minute", builds, mRenderer.getTextBuildCount());
+
+        mRenderer.draw(mCanvas, MINUTE_START + 60 * 1000L);
+        assertEquals("Error: text not rebuilt for the next minute",
+                builds + 1, mRenderer.getTextBuildCount());
+
+        mRenderer.setSurfaceSize(SIZE / 2, SIZE / 2);
+        mRenderer.draw(mCanvas, MINUTE_START + 60 * 1000L);
+        assertEquals("Error: text not rebuilt for a new surface size",
+                builds + 2, mRenderer.getTextBuildCount());
+    }
+
+    public void testLayerOnlyBuiltWhenStaticElementsChange() {
+        mRenderer.setAmbient(false, false);
+        mRenderer.draw(mCanvas, MINUTE_START);
+        int builds = mRenderer.getLayerBuildCount();
+
+        // A new minute only changes the time, which is drawn over the layer
+        mRenderer.draw(mCanvas, MINUTE_START + 60 * 1000L);
+        assertEquals("Error: layer rebuilt for a new minute",
+                builds, mRenderer.getLayerBuildCount());
+
+        mRenderer.setAmbient(true, false);
+        mRenderer.draw(mCanvas, MINUTE_START + 60 * 1000L);
+        mRenderer.setAmbient(false, false);
+        mRenderer.draw(mCanvas, MINUTE_START + 60 * 1000L);
+        assertEquals("Error: expected exactly one ambient layer render",
+                builds + 1, mRenderer.getLayerBuildCount());
+
+        mRenderer.setWeather("26°", "16°", null, null);
+        mRenderer.draw(mCanvas, MINUTE_START + 60 * 1000L);
+        assertEquals("Error: layer not rebuilt for new weather",
+                builds + 2, mRenderer.getLayerBuildCount());
+
+        mRenderer.draw(mCanvas, MINUTE_START + 24 * 60 * 60 * 1000L);
+        assertEquals("Error: layer not rebuilt for a new date",
+                builds + 3, mRenderer.getLayerBuildCount());
+    }
+
+    public void testLayerMatchesDirectDraw() {
+        mRenderer.setAmbient(false, false);
+        Bitmap cached = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mRenderer.draw(new Canvas(cached), MINUTE_START);
+
+        mRenderer.setLayerCacheEnabled(false);
+        Bitmap direct = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mRenderer.draw(new Canvas(direct), MINUTE_START);
+
+        assertTrue("Error: cached frame differs from a directly drawn one", cached.sameAs(direct));
+    }
+
+    private int countDrawAllocations() {
+        // The first frame formats the time and date
+        mRenderer.draw(mCanvas, MINUTE_START);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 1; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, MINUTE_START + i * 1000L);
+        }
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+/*
+    Checks that the watch draws the same art and temperatures from a condition payload as the
+    phone used to send it ready-made.
+ */
+public class TestWeatherArt extends AndroidTestCase {
+
+    public void testArtForConditions() {
+        assertEquals(R.drawable.art_storm, WeatherArt.getArtResource(211));
+        assertEquals(R.drawable.art_light_rain, WeatherArt.getArtResource(300));
+        assertEquals(R.drawable.art_rain, WeatherArt.getArtResource(502));
+        assertEquals(R.drawable.art_snow, WeatherArt.getArtResource(511));
+        assertEquals(R.drawable.art_fog, WeatherArt.getArtResource(761));
+        assertEquals(R.drawable.art_storm, WeatherArt.getArtResource(781));
+        assertEquals(R.drawable.art_clear, WeatherArt.getArtResource(800));
+        assertEquals(R.drawable.art_light_clouds, WeatherArt.getArtResource(801));
+        assertEquals(R.drawable.art_clouds, WeatherArt.getArtResource(804));
+        assertEquals(-1, WeatherArt.getArtResource(900));
+        assertEquals(-1, WeatherArt.getArtResource(-1));
+    }
+
+    public void testFormatTemperature() {
+        assertEquals(mContext.getString(R.string.format_temperature, 21.0),
+                WeatherArt.formatTemperature(mContext, 21.0, true));
+        assertEquals(mContext.getString(R.string.format_temperature, 212.0),
+                WeatherArt.formatTemperature(mContext, 100.0, false));
+    }
+}
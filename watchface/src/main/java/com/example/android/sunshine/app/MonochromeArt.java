@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * Black and white versions of the weather art for ambient mode.
+ *
+ * A pixel becomes white when its HSV value (the largest of its red, green and blue components)
+ * is above one half, the same threshold the original per-pixel Color.colorToHSV loop used. The
+ * conversion works on the whole pixel array at once and at the size the art is drawn at, and
+ * the results are cached by art and size, so the same condition arriving again is free.
+ */
+final class MonochromeArt {
+    // Largest channel value that still counts as dark: 127 / 255 < 0.5 < 128 / 255
+    private static final int DARK_MAX = 127;
+
+    // A few conditions' worth at watch face sizes
+    private static final int CACHE_BYTES = 512 * 1024;
+
+    private static final LruCache<String, Bitmap> sCache =
+            new LruCache<String, Bitmap>(CACHE_BYTES) {
+                @Override
+                protected int sizeOf(String key, Bitmap value) {
+                    return value.getByteCount();
+                }
+            };
+
+    private MonochromeArt() {
+    }
+
+    /**
+     * Returns the cached conversion of some art, converting it if needed. Does the conversion on
+     * the calling thread, so should not be called from the main thread.
+     *
+     * @param key identifies the art's content, e.g. the digest of the Asset it came in
+     * @param art the art in color
+     * @param size the size in pixels the art is drawn at, or 0 to keep its own size
+     */
+    static Bitmap get(String key, Bitmap art, int size) {
+        String cacheKey = key + "@" + size;
+        Bitmap monochrome = sCache.get(cacheKey);
+        if (monochrome == null) {
+            monochrome = convert(art, size);
+            sCache.put(cacheKey, monochrome);
+        }
+        return monochrome;
+    }
+
+    /**
+     * @param art the art in color
+     * @param size the largest width or height of the result, or 0 to keep the art's own size.
+     *             Art is only ever scaled down.
+     */
+    static Bitmap convert(Bitmap art, int size) {
+        Bitmap source = art;
+        int largest = Math.max(art.getWidth(), art.getHeight());
+        if (size > 0 && largest > size) {
+            float scale = (float) size / largest;
+            source = Bitmap.createScaledBitmap(art,
+                    Math.max(1, Math.round(art.getWidth() * scale)),
+                    Math.max(1, Math.round(art.getHeight() * scale)),
+                    true);
+        }
+
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] pixels = new int[width * height];
+        source.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (source != art) {
+            source.recycle();
+        }
+
+        for (int i = 0; i < pixels.length; i++) {
+            int color = pixels[i];
+            int value = Math.max(Math.max((color >> 16) & 0xff, (color >> 8) & 0xff), color & 0xff);
+            pixels[i] = value > DARK_MAX ? 0xffffffff : 0xff000000;
+        }
+
+        Bitmap monochrome = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        monochrome.setPixels(pixels, 0, width, 0, 0, width, height);
+        return monochrome;
+    }
+}
@@ -24,30 +24,23 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.content.ContextCompat;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.Layout;
-import android.text.Spannable;
-import android.text.SpannableString;
-import android.text.Spanned;
-import android.text.StaticLayout;
-import android.text.TextPaint;
-import android.text.style.StyleSpan;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.core.ForecastPayload;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -56,23 +49,28 @@ import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
-import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Locale;
+import java.nio.ByteBuffer;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face showing hours, minutes, the date and the weather. On devices with low-bit
+ * ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class SunshineWatchFace extends CanvasWatchFaceService {
     private static final String TAG = "SunshineWatchFace";
@@ -80,11 +78,13 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
     private static final Typeface NORMAL_TYPEFACE =
             Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
 
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
     /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
+     * How long weather from the phone is shown without asking for an update. The phone syncs and
+     * pushes every three hours, so anything older means a push was missed.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long WEATHER_FRESH_MS = TimeUnit.HOURS.toMillis(3);
 
     /**
      * Handler message id for updating the time periodically in interactive mode.
@@ -118,46 +118,68 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
     private class Engine extends CanvasWatchFaceService.Engine implements
             DataApi.DataListener,
+            MessageApi.MessageListener,
             GoogleApiClient.ConnectionCallbacks,
             GoogleApiClient.OnConnectionFailedListener {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        Paint mBackgroundPaint;
-        TextPaint mTextPaint;
-        TextPaint mTimePaint;
-        TextPaint mDatePaint;
-        TextPaint mHighPaint;
-        TextPaint mLowPaint;
-        Paint mSeparatorPaint;
+        WatchFaceRenderer mRenderer;
         boolean mAmbient;
-        Calendar mCalendar;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mEventInvalidations++;
+                mRenderer.setTimeZone(TimeZone.getDefault());
                 invalidate();
             }
         };
         float mXOffset;
         float mYOffset;
-        float mCenterX;
-        float mCenterY;
-
-        private Rect mPeekCardBounds = new Rect();
 
+        // Connected once in onCreate and kept until onDestroy
         private GoogleApiClient mGoogleApiClient;
+        private int mConnections;
+        private long mConnectStart;
+        private long mConnectingMs;
+        // Loads assets and converts art one task at a time, off the main thread
+        private final ExecutorService mAssetExecutor = Executors.newSingleThreadExecutor();
+        private GetWeatherDataTask mWeatherTask;
+        // Set in onDestroy, after which late events must not start tasks on the executor
+        private boolean mDestroyed;
         private static final String WEARABLE_PATH = "/sunshine_watchface";
-        private static final String UPDATE_PATH = "/sunshine_watchface_update";
+        private static final String REQUEST_PATH = "/sunshine_watchface/request";
+        private static final String RESPONSE_PATH = "/sunshine_watchface/response";
+        private static final String ACK_PATH = "/sunshine_watchface/ack";
+        private static final String WEATHER_ID_KEY = "weather_id";
+        private static final String HIGH_KEY = "high";
+        private static final String LOW_KEY = "low";
+        private static final String METRIC_KEY = "metric";
+        // Preformatted temperatures, still sent by older phone apps
         private static final String HIGH_TEMP_KEY = "high_temp";
         private static final String LOW_TEMP_KEY = "low_temp";
-        private static final String UPDATE_KEY = "update";
+        private static final String VERSION_KEY = "version";
         private static final String ART_KEY = "art_key";
+        private static final String ART_HASH_KEY = "art_hash";
+        private static final String FORECAST_KEY = "forecast";
         private final long TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
-        private String mHighTemp;
-        private String mLowTemp;
+        // When the weather being shown was received from the phone, or 0 if there is none
+        private long mWeatherReceivedAt;
+        // The phone's version of the weather being shown, or 0 if there is none
+        private long mDataVersion;
+        // When the pending update request was sent, and when the one whose answer is about to
+        // be drawn was, in elapsed realtime, or 0 if there is none
+        private long mUpdateRequestedAt;
+        private long mUpdateAnsweredFor;
+
+        // How often the face was woken up to redraw, since mStatsStart
+        private long mStatsStart = SystemClock.elapsedRealtime();
+        private int mTimerWakeUps;
+        private int mEventInvalidations;
+        // The color art currently shown, and the key its monochrome versions are cached under
+        private String mWeatherArtKey;
         private Bitmap mWeatherArt;
-        private Bitmap mWeatherArtMonochrome;
-        private boolean mUpdated = false;
+        // The encoded art when it is custom art sent by the phone, or null for bundled art
+        private byte[] mWeatherArtBytes;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -169,8 +191,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
 
-            connectToGoogleApiClient();
-
             setWatchFaceStyle(new WatchFaceStyle.Builder(SunshineWatchFace.this)
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
                     .setPeekOpacityMode(WatchFaceStyle.PEEK_OPACITY_MODE_OPAQUE)
@@ -180,64 +200,106 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             Resources resources = SunshineWatchFace.this.getResources();
             mYOffset = resources.getDimension(R.dimen.digital_y_offset);
 
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(ContextCompat.getColor(getApplicationContext(), R.color.background));
-
-            mTextPaint = new TextPaint();
-            mTextPaint.setColor(ContextCompat.getColor(getApplicationContext(), R.color.digital_text));
-            mTextPaint.setAntiAlias(true);
-
-            mTimePaint = new TextPaint(mTextPaint);
-            mTimePaint.setTypeface(Typeface.create("sans-serif-light", Typeface.NORMAL));
-
-            // Alpha of date and low temp, out of 255
-            int alpha = 150;
-
-            mDatePaint = new TextPaint(mTextPaint);
-            mDatePaint.setTextAlign(Paint.Align.CENTER);
-            mDatePaint.setAlpha(alpha);
-            mDatePaint.setTextScaleX(0.8f);
-
-            mHighPaint = new TextPaint(mTextPaint);
-            mHighPaint.setTypeface(Typeface.create("sans-serif-light", Typeface.BOLD));
-            mHighPaint.setTextAlign(Paint.Align.CENTER);
-
-            mLowPaint = new TextPaint(mTextPaint);
-            mLowPaint.setTypeface(Typeface.create("sans-serif-light", Typeface.NORMAL));
-            mLowPaint.setAlpha(alpha);
-
-            mSeparatorPaint = new Paint();
-            mSeparatorPaint.setColor(Color.WHITE);
-            mSeparatorPaint.setAlpha(alpha);
-            mSeparatorPaint.setStrokeWidth(1f);
-
-            mCalendar = Calendar.getInstance();
+            mRenderer = new WatchFaceRenderer(getApplicationContext());
+
+            // Start from the last weather the phone sent. Its ambient art is converted once the
+            // surface size is known.
+            WeatherCache cached = WeatherCache.read(getApplicationContext());
+            if (cached != null) {
+                mWeatherReceivedAt = cached.receivedAt;
+                mDataVersion = cached.dataVersion;
+                mWeatherArtKey = cached.artKey;
+                mWeatherArt = cached.art;
+                mWeatherArtBytes = cached.artBytes;
+                mRenderer.setWeather(cached.highTemp, cached.lowTemp, cached.art, null);
+                ForecastPayload forecast = ForecastPayload.decode(cached.forecast);
+                if (forecast != null) {
+                    mRenderer.setForecast(forecast.epochDays,
+                            WeatherArt.formatForecast(getApplicationContext(), forecast,
+                                    cached.metric),
+                            WeatherArt.decodeForecastArt(getResources(), forecast));
+                }
+            }
 
+            connectToGoogleApiClient();
+        }
 
+        private boolean isWeatherFresh() {
+            return mWeatherReceivedAt > 0
+                    && System.currentTimeMillis() - mWeatherReceivedAt < WEATHER_FRESH_MS;
         }
 
         @Override
         public void onConnected(@Nullable Bundle bundle) {
+            mConnections++;
+            mConnectingMs += SystemClock.elapsedRealtime() - mConnectStart;
             if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "onConnected2: " + bundle);
+                Log.d(TAG, "onConnected2: " + bundle + ", connection " + mConnections
+                        + ", " + mConnectingMs + "ms spent connecting in total");
             }
             Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
+            Wearable.MessageApi.addListener(mGoogleApiClient, Engine.this);
 
-            if (!mUpdated) {
-                PutDataMapRequest putDataMapReq = PutDataMapRequest.create(UPDATE_PATH);
-                putDataMapReq.getDataMap().putLong("time", System.currentTimeMillis());
-                putDataMapReq.getDataMap().putBoolean(UPDATE_KEY, true);
-                PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
-                putDataReq.setUrgent();
-                Wearable.DataApi.putDataItem(mGoogleApiClient, putDataReq)
-                        .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                            @Override
-                            public void onResult(DataApi.DataItemResult dataItemResult) {
-                                Log.d("updateWatch", "onConnected: Sending update request was successful: " + dataItemResult.getStatus()
-                                        .isSuccess());
+            if (!isWeatherFresh()) {
+                requestUpdate();
+            }
+        }
+
+        /**
+         * Asks the phone for the weather, sending the version shown so the phone can answer
+         * that it is up to date instead.
+         */
+        private void requestUpdate() {
+            final byte[] request = ByteBuffer.allocate(8).putLong(mDataVersion).array();
+            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient)
+                    .setResultCallback(new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+                        @Override
+                        public void onResult(NodeApi.GetConnectedNodesResult result) {
+                            if (!mGoogleApiClient.isConnected()) {
+                                return;
+                            }
+                            for (Node node : result.getNodes()) {
+                                mUpdateRequestedAt = SystemClock.elapsedRealtime();
+                                Wearable.MessageApi.sendMessage(mGoogleApiClient, node.getId(),
+                                        REQUEST_PATH, request);
                             }
-                        });
+                        }
+                    });
+        }
+
+        @Override
+        public void onMessageReceived(MessageEvent messageEvent) {
+            if (!RESPONSE_PATH.equals(messageEvent.getPath())) {
+                return;
+            }
+            long latencyMs = mUpdateRequestedAt > 0
+                    ? SystemClock.elapsedRealtime() - mUpdateRequestedAt : -1;
+            byte[] reply = messageEvent.getData();
+            if (reply == null || reply.length == 0) {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Weather up to date, answered in " + latencyMs + "ms");
+                }
+                mUpdateRequestedAt = 0;
+                final long receivedAt = System.currentTimeMillis();
+                mWeatherReceivedAt = receivedAt;
+                if (!mDestroyed) {
+                    // So that the next engine knows the weather is fresh, too
+                    mAssetExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            WeatherCache.setReceivedAt(getApplicationContext(), receivedAt);
+                        }
+                    });
+                }
+                return;
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Weather answered in " + latencyMs + "ms with " + reply.length
+                        + " bytes");
             }
+            mUpdateAnsweredFor = mUpdateRequestedAt;
+            mUpdateRequestedAt = 0;
+            loadWeather(DataMap.fromByteArray(reply), messageEvent.getSourceNodeId());
         }
 
         @Override
@@ -245,6 +307,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onConnectionSuspended2: " + i);
             }
+            // The client reconnects by itself and calls onConnected again
+            mConnectStart = SystemClock.elapsedRealtime();
         }
 
         @Override
@@ -263,10 +327,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     Log.v("onDataChangedPath", item.getUri().getPath());
                     if (item.getUri().getPath().compareTo(WEARABLE_PATH) == 0) {
                         DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
-                        // Don't do ASyncTask if the data was meant for the sync adapter
-                        Log.v("onDataChangedUpdate", Boolean.toString(dataMap.getBoolean(UPDATE_KEY)));
-                        GetWeatherDataTask getWeatherDataTask = new GetWeatherDataTask(dataMap);
-                        getWeatherDataTask.execute(0);
+                        // The host of a DataItem's URI is the node that put it
+                        loadWeather(dataMap, item.getUri().getHost());
                     }
                 } else if (event.getType() == DataEvent.TYPE_DELETED) {
                     // DataItem deleted
@@ -274,59 +336,257 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
         }
 
-        private void updateUI(String highTemp, String lowTemp, Bitmap weatherArt) {
+        private void loadWeather(DataMap dataMap, String sourceNodeId) {
+            if (mDestroyed) {
+                // A listener callback that was already queued when the engine went away
+                return;
+            }
+            // Only the newest weather matters, so drop a load still in progress
+            if (mWeatherTask != null) {
+                mWeatherTask.cancel(false);
+            }
+            mWeatherTask = new GetWeatherDataTask(dataMap, sourceNodeId);
+            mWeatherTask.executeOnExecutor(mAssetExecutor, 0);
+        }
+
+        private void updateUI(long receivedAt, long dataVersion, String highTemp, String lowTemp,
+                              String artKey,
+                              Bitmap weatherArt, byte[] weatherArtBytes,
+                              Bitmap weatherArtMonochrome) {
             Log.v("updateWatch", "highTemp: " + highTemp + ", lowTemp: " + lowTemp);
-            mHighTemp = highTemp;
-            mLowTemp = lowTemp;
+            mWeatherArtKey = artKey;
             mWeatherArt = weatherArt;
-            mWeatherArtMonochrome = toMonochrome(weatherArt);
-            mUpdated = true;
+            mWeatherArtBytes = weatherArtBytes;
+            mRenderer.setWeather(highTemp, lowTemp, weatherArt, weatherArtMonochrome);
+            mWeatherReceivedAt = receivedAt;
+            mDataVersion = dataVersion;
+            mEventInvalidations++;
             invalidate();
         }
 
+        /**
+         * Tells the phone which weather is shown, so that it only pushes when it has newer.
+         */
+        private void acknowledge(String nodeId, long dataVersion) {
+            if (nodeId == null || dataVersion == 0 || !mGoogleApiClient.isConnected()) {
+                return;
+            }
+            Wearable.MessageApi.sendMessage(mGoogleApiClient, nodeId, ACK_PATH,
+                    ByteBuffer.allocate(8).putLong(dataVersion).array());
+        }
+
 
         /**
-         * ASyncTask to load a bitmap from an asset. Using help from Android documentation
+         * ASyncTask to load the weather art. The phone normally only sends the condition, which is
+         * drawn with the art bundled here. Custom art comes as an asset in every DataItem, along
+         * with its hash, so that art shown already isn't decoded again. A reply to a request
+         * carries only the hash, and the asset is then read from the stored DataItem. Using help
+         * from Android documentation
          * https://developer.android.com/training/displaying-bitmaps/process-bitmap.html and
          * https://developer.android.com/training/wearables/data-layer/assets.html
          */
         private class GetWeatherDataTask extends AsyncTask<Integer, Void, Bitmap> {
             private final Asset artAsset;
+            private final String artHash;
+            private final int weatherId;
+            private final boolean metric;
+            private final byte[] forecastBytes;
             private final String highTemp;
             private final String lowTemp;
-
-            public GetWeatherDataTask(DataMap dataMap) {
+            private final int artSize;
+            private final long receivedAt;
+            private final long dataVersion;
+            private final String sourceNodeId;
+            // The custom art already shown, in case the phone sent the same again
+            private final String currentArtKey;
+            private final Bitmap currentArt;
+            private final byte[] currentArtBytes;
+            // The version shown, or 0 if the custom art is missing and has to be asked for again
+            private long shownVersion;
+            private String artKey;
+            private byte[] artBytes;
+            private Bitmap artMonochrome;
+            private ForecastPayload forecast;
+            private String[] forecastTemps;
+            private Bitmap[] forecastArt;
+
+            public GetWeatherDataTask(DataMap dataMap, String sourceNodeId) {
+                this.sourceNodeId = sourceNodeId;
                 artAsset = dataMap.getAsset(ART_KEY);
-                highTemp = dataMap.getString(HIGH_TEMP_KEY);
-                lowTemp = dataMap.getString(LOW_TEMP_KEY);
+                artHash = dataMap.getString(ART_HASH_KEY);
+                weatherId = dataMap.getInt(WEATHER_ID_KEY, -1);
+                metric = dataMap.getBoolean(METRIC_KEY, true);
+                forecastBytes = dataMap.getByteArray(FORECAST_KEY);
+                if (dataMap.containsKey(HIGH_KEY)) {
+                    highTemp = WeatherArt.formatTemperature(getApplicationContext(),
+                            dataMap.getDouble(HIGH_KEY), metric);
+                    lowTemp = WeatherArt.formatTemperature(getApplicationContext(),
+                            dataMap.getDouble(LOW_KEY), metric);
+                } else {
+                    highTemp = dataMap.getString(HIGH_TEMP_KEY);
+                    lowTemp = dataMap.getString(LOW_TEMP_KEY);
+                }
+                artSize = mRenderer.getArtSize();
+                receivedAt = System.currentTimeMillis();
+                dataVersion = dataMap.getLong(VERSION_KEY, 0);
+                currentArtKey = mWeatherArtKey;
+                currentArt = mWeatherArt;
+                currentArtBytes = mWeatherArtBytes;
             }
 
             protected Bitmap doInBackground(Integer... params) {
-                if (artAsset == null) {
+                if (isCancelled()) {
                     return null;
                 }
-                ConnectionResult result =
-                        mGoogleApiClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                if (!result.isSuccess()) {
+                Bitmap bitmap = null;
+                if (artHash != null && artHash.equals(currentArtKey)
+                        && currentArtBytes != null) {
+                    // The phone attaches its art to every payload, but this art is shown already
+                    bitmap = currentArt;
+                    artBytes = currentArtBytes;
+                    artKey = currentArtKey;
+                } else {
+                    Asset asset = artAsset;
+                    if (asset == null && artHash != null) {
+                        asset = getStoredArtAsset();
+                    }
+                    byte[] assetBytes = asset != null ? loadAsset(asset) : null;
+                    if (isCancelled()) {
+                        return null;
+                    }
+                    if (assetBytes != null) {
+                        // decode the asset into a bitmap
+                        bitmap = BitmapFactory.decodeByteArray(assetBytes, 0, assetBytes.length);
+                    }
+                    if (bitmap != null) {
+                        artBytes = assetBytes;
+                        if (artHash != null) {
+                            artKey = artHash;
+                        } else {
+                            // The same art is sent for the same condition, so its digest
+                            // identifies it
+                            artKey = asset.getDigest() != null
+                                    ? asset.getDigest() : Integer.toString(bitmap.hashCode());
+                        }
+                    }
+                }
+                shownVersion = dataVersion;
+                if (bitmap == null && artHash != null) {
+                    // Not acknowledging this version makes the phone send the art again
+                    shownVersion = 0;
+                }
+                if (bitmap == null) {
+                    int artResource = WeatherArt.getArtResource(weatherId);
+                    if (artResource != -1) {
+                        bitmap = BitmapFactory.decodeResource(getResources(), artResource);
+                        artKey = "res:" + artResource;
+                    }
+                }
+                if (bitmap != null) {
+                    artMonochrome = MonochromeArt.get(artKey, bitmap, artSize);
+                }
+                forecast = ForecastPayload.decode(forecastBytes);
+                if (forecast != null) {
+                    forecastTemps = WeatherArt.formatForecast(getApplicationContext(), forecast,
+                            metric);
+                    forecastArt = WeatherArt.decodeForecastArt(getResources(), forecast);
+                }
+                WeatherCache.write(getApplicationContext(), receivedAt, shownVersion, highTemp,
+                        lowTemp, weatherId, artKey, artBytes, metric,
+                        forecast != null ? forecastBytes : null);
+                return bitmap;
+            }
+
+            /**
+             * @return the art asset of the phone's DataItem if it carries the art the reply named,
+             * or null
+             */
+            private Asset getStoredArtAsset() {
+                if (!mGoogleApiClient.isConnected()) {
+                    return null;
+                }
+                // Without a host, the items put by any node
+                Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME)
+                        .path(WEARABLE_PATH).build();
+                DataItemBuffer items = Wearable.DataApi.getDataItems(mGoogleApiClient, uri)
+                        .await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                try {
+                    if (!items.getStatus().isSuccess()) {
+                        return null;
+                    }
+                    for (DataItem item : items) {
+                        DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
+                        if (artHash.equals(dataMap.getString(ART_HASH_KEY))) {
+                            return dataMap.getAsset(ART_KEY);
+                        }
+                    }
                     return null;
+                } finally {
+                    items.release();
                 }
-                // convert asset into a file descriptor and block until it's ready
-                InputStream assetInputStream = Wearable.DataApi.getFdForAsset(mGoogleApiClient, artAsset).await().getInputStream();
-                mGoogleApiClient.disconnect();
+            }
+
+            private byte[] loadAsset(Asset asset) {
+                // convert asset into a file descriptor and block until it's ready. Data events
+                // only arrive while the engine's client is connected, so it can be used as is.
+                DataApi.GetFdForAssetResult result = Wearable.DataApi
+                        .getFdForAsset(mGoogleApiClient, asset)
+                        .await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                InputStream assetInputStream = result.getStatus().isSuccess()
+                        ? result.getInputStream() : null;
 
                 if (assetInputStream == null) {
                     Log.w(TAG, "Requested an unknown Asset.");
                     return null;
                 }
-                // decode the stream into a bitmap
-                return BitmapFactory.decodeStream(assetInputStream);
+                try {
+                    return WeatherCache.readFully(assetInputStream);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error reading asset", e);
+                    return null;
+                }
             }
 
             @Override
             protected void onPostExecute(Bitmap bitmap) {
                 // Set image
-                updateUI(highTemp,lowTemp,bitmap);
-                connectToGoogleApiClient();
+                if (mWeatherTask == this) {
+                    mWeatherTask = null;
+                }
+                mRenderer.setForecast(forecast != null ? forecast.epochDays : null, forecastTemps,
+                        forecastArt);
+                updateUI(receivedAt, shownVersion, highTemp, lowTemp, artKey, bitmap, artBytes,
+                        artMonochrome);
+                acknowledge(sourceNodeId, shownVersion);
+            }
+        }
+
+        /**
+         * Converts the current art again for ambient mode, at the size it is now drawn at.
+         */
+        private class MonochromeArtTask extends AsyncTask<Void, Void, Bitmap> {
+            private final String artKey;
+            private final Bitmap art;
+            private final int artSize;
+
+            MonochromeArtTask(String artKey, Bitmap art, int artSize) {
+                this.artKey = artKey;
+                this.art = art;
+                this.artSize = artSize;
+            }
+
+            @Override
+            protected Bitmap doInBackground(Void... params) {
+                return MonochromeArt.get(artKey, art, artSize);
+            }
+
+            @Override
+            protected void onPostExecute(Bitmap artMonochrome) {
+                // Ignore the result if different art arrived in the meantime
+                if (art == mWeatherArt) {
+                    mRenderer.setWeatherArtMonochrome(artMonochrome);
+                    invalidate();
+                }
             }
         }
 
@@ -337,39 +597,33 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .addOnConnectionFailedListener(this)
                     .build();
 
+            mConnectStart = SystemClock.elapsedRealtime();
             mGoogleApiClient.connect();
         }
 
-
         @Override
-
         public void onDestroy() {
+            mDestroyed = true;
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            if (mWeatherTask != null) {
+                mWeatherTask.cancel(false);
+            }
+            if (mGoogleApiClient.isConnected()) {
+                Wearable.DataApi.removeListener(mGoogleApiClient, this);
+                Wearable.MessageApi.removeListener(mGoogleApiClient, this);
+            }
+            mGoogleApiClient.disconnect();
+            mAssetExecutor.shutdown();
             super.onDestroy();
         }
 
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             super.onSurfaceChanged(holder, format, width, height);
-
-            mCenterX = width / 2f;
-            mCenterY = width / 2f;
-
-            float largeTextSize = height / 6;
-            float mediumTextSize = height / 8;
-            float smallTextSize = height / 12;
-
-            mTimePaint.setTextSize(largeTextSize);
-
-            mDatePaint.setTextSize(smallTextSize);
-            mHighPaint.setTextSize(mediumTextSize);
-            mLowPaint.setTextSize(mediumTextSize);
-
-            if (!mLowBitAmbient) {
-                if (mWeatherArt == null) {
-                    mWeatherArt = BitmapFactory.decodeResource(getResources(), R.drawable.ic_sync_white_24dp);
-                }
-                mWeatherArtMonochrome = toMonochrome(mWeatherArt);
+            mRenderer.setSurfaceSize(width, height);
+            if (mWeatherArt != null && !mDestroyed) {
+                new MonochromeArtTask(mWeatherArtKey, mWeatherArt, mRenderer.getArtSize())
+                        .executeOnExecutor(mAssetExecutor);
             }
         }
 
@@ -380,11 +634,16 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             if (visible) {
                 registerReceiver();
 
-                // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                // Update time zone and locale in case they changed while we weren't visible.
+                mRenderer.updateLocale();
+                mRenderer.setTimeZone(TimeZone.getDefault());
                 invalidate();
             } else {
                 unregisterReceiver();
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Rendered " + mRenderer.takeFrameStats());
+                    logWakeUps();
+                }
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -418,10 +677,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             boolean isRound = insets.isRound();
             mXOffset = resources.getDimension(isRound
                     ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
-
-            mTextPaint.setTextSize(textSize);
+            mRenderer.setRound(isRound);
         }
 
         @Override
@@ -442,9 +698,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTextPaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(inAmbientMode, mLowBitAmbient);
                 invalidate();
             }
 
@@ -455,119 +709,21 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-
-            // Draw hours and minutes
-            // Spannable string help from http://stackoverflow.com/a/10410843/6591585
-            String hours = new SimpleDateFormat("h:", Locale.getDefault()).format(mCalendar.getTime());
-            String minutes = new SimpleDateFormat("mm", Locale.getDefault()).format(mCalendar.getTime());
-            Spannable time = new SpannableString(hours + minutes);
-            StyleSpan boldSpan = new StyleSpan(Typeface.BOLD);
-            time.setSpan(boldSpan, 0, hours.length(), Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
-            StaticLayout timeLayout = new StaticLayout(time, mTimePaint, getTextWidth(hours + minutes + ":", mTimePaint), Layout.Alignment.ALIGN_NORMAL, 1, 0, false);
-            canvas.save();
-            canvas.translate(mCenterX - timeLayout.getWidth() / 2, mCenterY - 2*mTimePaint.getTextSize());
-            timeLayout.draw(canvas);
-            canvas.restore();
-
-            // Draw the date
-            SimpleDateFormat dateFormat = new SimpleDateFormat("E, MMM d yyyy", Locale.getDefault());
-            String date = dateFormat.format(mCalendar.getTime());
-            canvas.drawText(date.toUpperCase(), mCenterX, mCenterY - mDatePaint.getTextSize() / 2, mDatePaint);
-
-            // Draw the high temperature
-            String suffix = "\u00B0";
-            if (mHighTemp == null) {
-                mHighTemp = "--" + suffix;
-            }
-            canvas.drawText(mHighTemp, mCenterX, mCenterY + mHighPaint.getTextSize() * 3 / 2, mHighPaint);
-
-            // Draw the low temperature
-            if (mLowTemp == null) {
-                mLowTemp = "--" + suffix;
-            }
-            canvas.drawText(mLowTemp, mCenterX + getTextWidth(" 00* ",mHighPaint) / 2, mCenterY + mLowPaint.getTextSize() * 3 / 2, mLowPaint);
-
-            // Draw the weather art
-            if (mWeatherArt == null) {
-                mWeatherArt = BitmapFactory.decodeResource(getResources(), R.drawable.ic_sync_white_24dp);
-            }
-
-            canvas.save();
-            canvas.translate(mCenterX / 2 - 10, mCenterY + mLowPaint.getTextSize() * 1 / 2);
-
-            if (isInAmbientMode()) {
-                canvas.drawBitmap(mWeatherArtMonochrome,
-                        null,
-                        new Rect(0, 0, canvas.getWidth() / 6, canvas.getWidth() / 6),
-                        null);
-            } else {
-                canvas.drawBitmap(mWeatherArt,
-                        null,
-                        new Rect(0, 0, canvas.getWidth() / 6, canvas.getWidth() / 6),
-                        null);
-            }
-            canvas.restore();
-
-            // Draw the separator line
-            canvas.drawLine(mCenterX - mCenterX / 6,
-                    mCenterY + mLowPaint.getTextSize() / 4,
-                    mCenterX + mCenterX / 6,
-                    mCenterY + mLowPaint.getTextSize() / 4,
-                    mSeparatorPaint);
-
-            /* Draw rectangle behind peek card in ambient mode to improve readability. */
-            if (mAmbient) {
-                canvas.drawRect(mPeekCardBounds, mBackgroundPaint);
+            mRenderer.draw(canvas, System.currentTimeMillis());
+            if (mUpdateAnsweredFor > 0 && mWeatherTask == null) {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Redrawn with new weather "
+                            + (SystemClock.elapsedRealtime() - mUpdateAnsweredFor)
+                            + "ms after asking the phone");
+                }
+                mUpdateAnsweredFor = 0;
             }
         }
 
         @Override
         public void onPeekCardPositionUpdate(Rect rect) {
             super.onPeekCardPositionUpdate(rect);
-            mPeekCardBounds.set(rect);
-        }
-
-        /**
-         * From http://stackoverflow.com/a/38635239/6591585
-         * @param bitmap
-         */
-        private Bitmap toMonochrome(Bitmap bitmap)
-        {
-            Bitmap bwBitmap = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.RGB_565 );
-            float[] hsv = new float[ 3 ];
-            for( int col = 0; col < bitmap.getWidth(); col++ ) {
-                for( int row = 0; row < bitmap.getHeight(); row++ ) {
-                    Color.colorToHSV( bitmap.getPixel( col, row ), hsv );
-                    if( hsv[ 2 ] > 0.5f ) {
-                        bwBitmap.setPixel( col, row, 0xffffffff );
-                    } else {
-                        bwBitmap.setPixel( col, row, 0xff000000 );
-                    }
-                }
-            }
-            return bwBitmap;
-        }
-
-        /**
-         * From http://stackoverflow.com/a/15398662/6591585
-         * @param text
-         * @param paint
-         * @return
-         */
-        public int getTextWidth(String text, Paint paint) {
-            Rect bounds = new Rect();
-            paint.getTextBounds(text, 0, text.length(), bounds);
-            int width = bounds.left + bounds.width();
-            return width;
+            mRenderer.setPeekCardBounds(rect);
         }
 
         /**
@@ -593,13 +749,25 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
          * Handle updating the time periodically in interactive mode.
          */
         private void handleUpdateTimeMessage() {
+            mTimerWakeUps++;
             invalidate();
             if (shouldTimerBeRunning()) {
+                // Wake up again when the finest unit on the face next changes. Time zone offsets
+                // are whole minutes, so this lines up with the displayed minute too.
+                long updateRateMs = mRenderer.getUpdateIntervalMs();
                 long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                long delayMs = updateRateMs - (timeMs % updateRateMs);
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
             }
         }
+
+        private void logWakeUps() {
+            long elapsedMs = SystemClock.elapsedRealtime() - mStatsStart;
+            if (elapsedMs > 0) {
+                Log.d(TAG, "Timer wake-ups per hour: " + mTimerWakeUps * HOUR_MS / elapsedMs
+                        + ", data and time zone redraws: " + mEventInvalidations
+                        + " over " + TimeUnit.MILLISECONDS.toMinutes(elapsedMs) + " minutes");
+            }
+        }
     }
 }
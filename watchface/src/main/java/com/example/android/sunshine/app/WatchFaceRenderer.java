@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.text.TextPaint;
+import android.text.format.DateUtils;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face onto a canvas.
+ *
+ * Everything that depends on the time is only re-formatted when the displayed minute or date
+ * changes, and everything that depends on the surface size is only measured when the size
+ * changes, so {@link #draw(Canvas, long)} does not allocate. Kept separate from the engine so
+ * that it can be driven directly from tests.
+ *
+ * The background, date, temperatures, art, separator and forecast strip change at most once a
+ * day or once per sync, so they are rendered into a layer bitmap, one for interactive and one for
+ * ambient mode. A frame is then a single blit of the current mode's layer with the time drawn on
+ * top.
+ */
+class WatchFaceRenderer {
+    private static final String NO_TEMP = "--\u00B0";
+
+    // Alpha of date and low temp, out of 255
+    private static final int SECONDARY_ALPHA = 150;
+
+    // Days after today shown in the forecast strip
+    private static final int FORECAST_COLUMNS = 3;
+
+    private static final int LAYER_INTERACTIVE = 0;
+    private static final int LAYER_AMBIENT = 1;
+
+    private final Paint mBackgroundPaint;
+    private final TextPaint mTimePaint;
+    private final TextPaint mHoursPaint;
+    private final TextPaint mDatePaint;
+    private final TextPaint mHighPaint;
+    private final TextPaint mLowPaint;
+    private final Paint mSeparatorPaint;
+    private final TextPaint mForecastDayPaint;
+    private final TextPaint mForecastTempPaint;
+    private final Paint mForecastArtPaint;
+
+    private final Calendar mCalendar = Calendar.getInstance();
+    private Locale mLocale;
+    private SimpleDateFormat mHourFormat;
+    private SimpleDateFormat mMinuteFormat;
+    private SimpleDateFormat mDateFormat;
+    // Forecast days are whole days since the epoch, so they are labelled in UTC
+    private SimpleDateFormat mForecastDayFormat;
+
+    private final Bitmap mPlaceholderArt;
+    private final Bitmap mPlaceholderArtMonochrome;
+    private Bitmap mWeatherArt;
+    private Bitmap mWeatherArtMonochrome;
+    private String mHighTemp = NO_TEMP;
+    private String mLowTemp = NO_TEMP;
+    private int[] mForecastDays = new int[0];
+    private String[] mForecastDayLabels = new String[0];
+    private String[] mForecastTemps;
+    private Bitmap[] mForecastArt;
+
+    private boolean mAmbient;
+    private boolean mRound;
+    private final Rect mPeekCardBounds = new Rect();
+    private final Rect mTextBounds = new Rect();
+
+    // Derived from the surface size
+    private int mWidth;
+    private int mHeight;
+    private float mCenterX;
+    private float mCenterY;
+    private float mTimeY;
+    private float mDateY;
+    private float mTempY;
+    private float mLowTempX;
+    private float mSeparatorStartX;
+    private float mSeparatorEndX;
+    private float mSeparatorY;
+    private final RectF mArtBounds = new RectF();
+    private float mForecastLeft;
+    private float mForecastColumnWidth;
+    private float mForecastDayY;
+    private float mForecastTempY;
+    private final RectF mForecastArtBounds = new RectF();
+
+    // Derived from the displayed day and minute
+    private int mDisplayedDay = -1;
+    private int mDisplayedMinute = -1;
+    private String mHoursText;
+    private String mMinutesText;
+    private String mDateText;
+    private int mTodayEpochDay;
+    private float mHoursX;
+    private float mMinutesX;
+    private int mTextBuilds;
+
+    // Pre-rendered static elements, indexed by LAYER_INTERACTIVE and LAYER_AMBIENT
+    private final Bitmap[] mLayers = new Bitmap[2];
+    private final boolean[] mLayerValid = new boolean[2];
+    private boolean mLayerCacheEnabled = true;
+    private int mLayerBuilds;
+
+    private int mFrames;
+    private long mDrawNanos;
+
+    WatchFaceRenderer(Context context) {
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(ContextCompat.getColor(context, R.color.background));
+
+        TextPaint textPaint = new TextPaint();
+        textPaint.setColor(ContextCompat.getColor(context, R.color.digital_text));
+        textPaint.setAntiAlias(true);
+
+        Typeface light = Typeface.create("sans-serif-light", Typeface.NORMAL);
+        mTimePaint = new TextPaint(textPaint);
+        mTimePaint.setTypeface(light);
+
+        // The hours are drawn bold, the minutes light
+        mHoursPaint = new TextPaint(mTimePaint);
+        mHoursPaint.setTypeface(Typeface.create(light, Typeface.BOLD));
+
+        mDatePaint = new TextPaint(textPaint);
+        mDatePaint.setTextAlign(Paint.Align.CENTER);
+        mDatePaint.setAlpha(SECONDARY_ALPHA);
+        mDatePaint.setTextScaleX(0.8f);
+
+        mHighPaint = new TextPaint(textPaint);
+        mHighPaint.setTypeface(Typeface.create("sans-serif-light", Typeface.BOLD));
+        mHighPaint.setTextAlign(Paint.Align.CENTER);
+
+        mLowPaint = new TextPaint(textPaint);
+        mLowPaint.setTypeface(light);
+        mLowPaint.setAlpha(SECONDARY_ALPHA);
+
+        mSeparatorPaint = new Paint();
+        mSeparatorPaint.setColor(Color.WHITE);
+        mSeparatorPaint.setAlpha(SECONDARY_ALPHA);
+        mSeparatorPaint.setStrokeWidth(1f);
+
+        mForecastDayPaint = new TextPaint(textPaint);
+        mForecastDayPaint.setTextAlign(Paint.Align.CENTER);
+        mForecastDayPaint.setAlpha(SECONDARY_ALPHA);
+
+        mForecastTempPaint = new TextPaint(textPaint);
+        mForecastTempPaint.setTypeface(light);
+        mForecastTempPaint.setTextAlign(Paint.Align.CENTER);
+        mForecastTempPaint.setTextScaleX(0.8f);
+
+        mForecastArtPaint = new Paint();
+        mForecastArtPaint.setFilterBitmap(true);
+
+        mPlaceholderArt = BitmapFactory.decodeResource(context.getResources(),
+                R.drawable.ic_sync_white_24dp);
+        mPlaceholderArtMonochrome = MonochromeArt.convert(mPlaceholderArt, 0);
+        mWeatherArt = mPlaceholderArt;
+        mWeatherArtMonochrome = mPlaceholderArtMonochrome;
+
+        updateLocale();
+    }
+
+    /**
+     * Re-creates the date formats if the default locale has changed since they were built.
+     */
+    void updateLocale() {
+        Locale locale = Locale.getDefault();
+        if (locale.equals(mLocale)) {
+            return;
+        }
+        mLocale = locale;
+        mHourFormat = new SimpleDateFormat("h:", locale);
+        mMinuteFormat = new SimpleDateFormat("mm", locale);
+        mDateFormat = new SimpleDateFormat("E, MMM d yyyy", locale);
+        mForecastDayFormat = new SimpleDateFormat("EEE", locale);
+        mForecastDayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        applyTimeZone(mCalendar.getTimeZone());
+        buildForecastLabels();
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        if (!timeZone.equals(mCalendar.getTimeZone())) {
+            applyTimeZone(timeZone);
+        }
+    }
+
+    private void applyTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        mHourFormat.setTimeZone(timeZone);
+        mMinuteFormat.setTimeZone(timeZone);
+        mDateFormat.setTimeZone(timeZone);
+        mDisplayedDay = -1;
+        mDisplayedMinute = -1;
+    }
+
+    void setSurfaceSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mCenterX = width / 2f;
+        mCenterY = width / 2f;
+
+        float largeTextSize = height / 6;
+        float mediumTextSize = height / 8;
+        float smallTextSize = height / 12;
+        float tinyTextSize = height / 20;
+
+        mTimePaint.setTextSize(largeTextSize);
+        mHoursPaint.setTextSize(largeTextSize);
+        mDatePaint.setTextSize(smallTextSize);
+        mHighPaint.setTextSize(mediumTextSize);
+        mLowPaint.setTextSize(mediumTextSize);
+
+        // Top of the time text, moved down to its baseline
+        mTimeY = mCenterY - 2 * largeTextSize - mTimePaint.ascent();
+        mDateY = mCenterY - smallTextSize / 2;
+        mTempY = mCenterY + mediumTextSize * 3 / 2;
+        mLowTempX = mCenterX + getTextWidth(" 00* ", mHighPaint) / 2;
+
+        mSeparatorStartX = mCenterX - mCenterX / 6;
+        mSeparatorEndX = mCenterX + mCenterX / 6;
+        mSeparatorY = mCenterY + mediumTextSize / 4;
+
+        float artLeft = mCenterX / 2 - 10;
+        float artTop = mCenterY + mediumTextSize / 2;
+        float artSize = width / 6;
+        mArtBounds.set(artLeft, artTop, artLeft + artSize, artTop + artSize);
+
+        // The strip sits below the art, narrow enough for the bottom of a round screen
+        mForecastDayPaint.setTextSize(tinyTextSize);
+        mForecastTempPaint.setTextSize(tinyTextSize);
+        mForecastColumnWidth = width / 6;
+        mForecastLeft = mCenterX - mForecastColumnWidth * FORECAST_COLUMNS / 2;
+        mForecastDayY = mArtBounds.bottom + tinyTextSize * 3 / 2;
+        float forecastArtSize = tinyTextSize * 6 / 5;
+        float forecastArtTop = mForecastDayY + tinyTextSize / 4;
+        mForecastArtBounds.set(0, forecastArtTop, forecastArtSize,
+                forecastArtTop + forecastArtSize);
+        mForecastTempY = forecastArtTop + forecastArtSize + tinyTextSize;
+
+        mDisplayedDay = -1;
+        mDisplayedMinute = -1;
+        invalidateLayers();
+    }
+
+    /**
+     * The layout does not differ between round and square screens yet, but a layer rendered for
+     * one shape is never reused for the other.
+     */
+    void setRound(boolean round) {
+        if (round != mRound) {
+            mRound = round;
+            invalidateLayers();
+        }
+    }
+
+    /**
+     * @param lowBitAmbient whether the display uses fewer bits per color in ambient mode, in
+     *                      which case text is drawn without anti-aliasing.
+     */
+    void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        // Each mode has its own layer, rendered with the paints as they are in that mode
+        mAmbient = ambient;
+        if (lowBitAmbient) {
+            boolean antiAlias = !ambient;
+            mTimePaint.setAntiAlias(antiAlias);
+            mHoursPaint.setAntiAlias(antiAlias);
+            mDatePaint.setAntiAlias(antiAlias);
+            mHighPaint.setAntiAlias(antiAlias);
+            mLowPaint.setAntiAlias(antiAlias);
+            mForecastDayPaint.setAntiAlias(antiAlias);
+            mForecastTempPaint.setAntiAlias(antiAlias);
+        }
+    }
+
+    /**
+     * @param highTemp formatted high temperature, or null if unknown
+     * @param lowTemp formatted low temperature, or null if unknown
+     * @param weatherArt art for the condition, or null to show the sync placeholder
+     * @param weatherArtMonochrome the art converted by {@link MonochromeArt} for ambient mode,
+     *                             or null to show the placeholder in ambient mode until
+     *                             {@link #setWeatherArtMonochrome(Bitmap)} is called
+     */
+    void setWeather(String highTemp, String lowTemp, Bitmap weatherArt,
+                    Bitmap weatherArtMonochrome) {
+        mHighTemp = highTemp == null ? NO_TEMP : highTemp;
+        mLowTemp = lowTemp == null ? NO_TEMP : lowTemp;
+        if (weatherArt == null) {
+            mWeatherArt = mPlaceholderArt;
+            mWeatherArtMonochrome = mPlaceholderArtMonochrome;
+        } else {
+            mWeatherArt = weatherArt;
+            mWeatherArtMonochrome = weatherArtMonochrome != null
+                    ? weatherArtMonochrome : mPlaceholderArtMonochrome;
+        }
+        invalidateLayers();
+    }
+
+    /**
+     * @param epochDays the forecast's days, as days since the epoch in the phone's time zone, or
+     *                  null to show no forecast. Days up to today are not shown, so a forecast
+     *                  from an earlier day still shows the days that are left.
+     * @param temps formatted high and low temperatures of each day
+     * @param art small art for each day's condition, or null entries where there is none. Only
+     *            shown in interactive mode.
+     */
+    void setForecast(int[] epochDays, String[] temps, Bitmap[] art) {
+        mForecastDays = epochDays != null ? epochDays : new int[0];
+        mForecastTemps = temps;
+        mForecastArt = art;
+        buildForecastLabels();
+        invalidateLayers();
+    }
+
+    /**
+     * Replaces the ambient art, e.g. with one converted for a new surface size.
+     */
+    void setWeatherArtMonochrome(Bitmap weatherArtMonochrome) {
+        if (mWeatherArt != mPlaceholderArt) {
+            mWeatherArtMonochrome = weatherArtMonochrome;
+            mLayerValid[LAYER_AMBIENT] = false;
+        }
+    }
+
+    /**
+     * @return how often the displayed time changes: a minute, since only hours and minutes are
+     * shown. A face that drew seconds would return a second here.
+     */
+    long getUpdateIntervalMs() {
+        return DateUtils.MINUTE_IN_MILLIS;
+    }
+
+    /**
+     * @return the size in pixels the weather art is drawn at, for the current surface.
+     */
+    int getArtSize() {
+        return Math.round(mArtBounds.width());
+    }
+
+    void setPeekCardBounds(Rect bounds) {
+        mPeekCardBounds.set(bounds);
+    }
+
+    /**
+     * @return how many times the hours and minutes have been formatted and measured.
+     */
+    int getTextBuildCount() {
+        return mTextBuilds;
+    }
+
+    /**
+     * @return how many times a layer of static elements has been rendered.
+     */
+    int getLayerBuildCount() {
+        return mLayerBuilds;
+    }
+
+    /**
+     * Turns the layer cache off to draw every element on every frame, which is only useful to
+     * compare frame times with and without it.
+     */
+    void setLayerCacheEnabled(boolean enabled) {
+        mLayerCacheEnabled = enabled;
+        invalidateLayers();
+    }
+
+    /**
+     * @return frames drawn, average draw time and layer renders since the last call.
+     */
+    String takeFrameStats() {
+        String stats = mFrames + " frames, "
+                + (mFrames == 0 ? 0 : mDrawNanos / mFrames / 1000) + "us average draw, "
+                + mLayerBuilds + " layer renders in total";
+        mFrames = 0;
+        mDrawNanos = 0;
+        return stats;
+    }
+
+    void draw(Canvas canvas, long now) {
+        long start = System.nanoTime();
+
+        mCalendar.setTimeInMillis(now);
+        int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+        int minute = mCalendar.get(Calendar.HOUR_OF_DAY) * 60 + mCalendar.get(Calendar.MINUTE);
+        boolean newDay = day != mDisplayedDay;
+        if (newDay) {
+            mDateText = mDateFormat.format(mCalendar.getTime()).toUpperCase(mLocale);
+            mDisplayedDay = day;
+            long offset = mCalendar.get(Calendar.ZONE_OFFSET) + mCalendar.get(Calendar.DST_OFFSET);
+            mTodayEpochDay = (int) ((now + offset) / DateUtils.DAY_IN_MILLIS);
+            invalidateLayers();
+        }
+        if (newDay || minute != mDisplayedMinute) {
+            buildTimeText();
+            mDisplayedMinute = minute;
+        }
+
+        if (mLayerCacheEnabled) {
+            int layer = mAmbient ? LAYER_AMBIENT : LAYER_INTERACTIVE;
+            if (!mLayerValid[layer]) {
+                buildLayer(layer);
+            }
+            canvas.drawBitmap(mLayers[layer], 0, 0, null);
+        } else {
+            drawStaticElements(canvas);
+        }
+
+        // Draw hours and minutes
+        canvas.drawText(mHoursText, mHoursX, mTimeY, mHoursPaint);
+        canvas.drawText(mMinutesText, mMinutesX, mTimeY, mTimePaint);
+
+        /* Draw rectangle behind peek card in ambient mode to improve readability. */
+        if (mAmbient) {
+            canvas.drawRect(mPeekCardBounds, mBackgroundPaint);
+        }
+
+        mFrames++;
+        mDrawNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Draws everything except the time and the peek card background.
+     */
+    private void drawStaticElements(Canvas canvas) {
+        // Draw the background.
+        if (mAmbient) {
+            canvas.drawColor(Color.BLACK);
+        } else {
+            canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mBackgroundPaint);
+        }
+
+        // Draw the date
+        canvas.drawText(mDateText, mCenterX, mDateY, mDatePaint);
+
+        // Draw the high and low temperatures
+        canvas.drawText(mHighTemp, mCenterX, mTempY, mHighPaint);
+        canvas.drawText(mLowTemp, mLowTempX, mTempY, mLowPaint);
+
+        // Draw the weather art
+        canvas.drawBitmap(mAmbient ? mWeatherArtMonochrome : mWeatherArt, null, mArtBounds, null);
+
+        // Draw the separator line
+        canvas.drawLine(mSeparatorStartX, mSeparatorY, mSeparatorEndX, mSeparatorY,
+                mSeparatorPaint);
+
+        drawForecast(canvas);
+    }
+
+    private void drawForecast(Canvas canvas) {
+        int column = 0;
+        for (int i = 0; i < mForecastDays.length && column < FORECAST_COLUMNS; i++) {
+            if (mForecastDays[i] <= mTodayEpochDay) {
+                continue;
+            }
+            float centerX = mForecastLeft + (column + 0.5f) * mForecastColumnWidth;
+            canvas.drawText(mForecastDayLabels[i], centerX, mForecastDayY, mForecastDayPaint);
+            if (!mAmbient && mForecastArt[i] != null) {
+                mForecastArtBounds.offsetTo(centerX - mForecastArtBounds.width() / 2,
+                        mForecastArtBounds.top);
+                canvas.drawBitmap(mForecastArt[i], null, mForecastArtBounds, mForecastArtPaint);
+            }
+            canvas.drawText(mForecastTemps[i], centerX, mForecastTempY, mForecastTempPaint);
+            column++;
+        }
+    }
+
+    private void buildForecastLabels() {
+        String[] labels = new String[mForecastDays.length];
+        for (int i = 0; i < labels.length; i++) {
+            Date day = new Date(mForecastDays[i] * DateUtils.DAY_IN_MILLIS);
+            labels[i] = mForecastDayFormat.format(day).toUpperCase(mLocale);
+        }
+        mForecastDayLabels = labels;
+    }
+
+    private void buildLayer(int layer) {
+        Bitmap bitmap = mLayers[layer];
+        if (bitmap == null || bitmap.getWidth() != mWidth || bitmap.getHeight() != mHeight) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            // The ambient layer is only black, white and greys, so it does not need 32 bits
+            bitmap = Bitmap.createBitmap(mWidth, mHeight, layer == LAYER_AMBIENT
+                    ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+            mLayers[layer] = bitmap;
+        }
+        drawStaticElements(new Canvas(bitmap));
+        mLayerValid[layer] = true;
+        mLayerBuilds++;
+    }
+
+    private void invalidateLayers() {
+        mLayerValid[LAYER_INTERACTIVE] = false;
+        mLayerValid[LAYER_AMBIENT] = false;
+    }
+
+    private void buildTimeText() {
+        Date time = mCalendar.getTime();
+        mHoursText = mHourFormat.format(time);
+        mMinutesText = mMinuteFormat.format(time);
+
+        float hoursWidth = mHoursPaint.measureText(mHoursText);
+        float width = hoursWidth + mTimePaint.measureText(mMinutesText);
+        mHoursX = mCenterX - width / 2;
+        mMinutesX = mHoursX + hoursWidth;
+        mTextBuilds++;
+    }
+
+    /**
+     * From http://stackoverflow.com/a/15398662/6591585
+     */
+    private int getTextWidth(String text, Paint paint) {
+        paint.getTextBounds(text, 0, text.length(), mTextBounds);
+        return mTextBounds.left + mTextBounds.width();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.core.ForecastPayload;
+import com.example.android.sunshine.core.Temperatures;
+import com.example.android.sunshine.core.WeatherConditions;
+
+/**
+ * The weather art the watch face bundles, and formatting for the numbers the phone sends, so
+ * that a weather update only has to carry a condition code and two temperatures.
+ */
+final class WeatherArt {
+
+    // The bundled art is 144 pixels, so this gives forecast strip art of 36
+    private static final int FORECAST_ART_SAMPLE_SIZE = 4;
+
+    // Indexed by group, in the order of the constants in WeatherConditions
+    private static final int[] GROUP_ART = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds,
+            R.drawable.art_storm
+    };
+
+    private WeatherArt() {
+    }
+
+    /**
+     * Helper method to provide the art resource id according to the weather condition id returned
+     * by the OpenWeatherMap call, in the art groups the phone app uses.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     * @return resource id for the corresponding image. -1 if no relation is found.
+     */
+    static int getArtResource(int weatherId) {
+        int group = WeatherConditions.getGroup(weatherId);
+        return group == WeatherConditions.NO_GROUP ? -1 : GROUP_ART[group];
+    }
+
+    /**
+     * @param celsius the temperature as stored by the phone
+     * @param metric whether the user wants Celsius; otherwise it is shown in Fahrenheit
+     */
+    static String formatTemperature(Context context, double celsius, boolean metric) {
+        return context.getString(R.string.format_temperature,
+                Temperatures.toDisplay(celsius, metric));
+    }
+
+    /**
+     * @return the high and low of each day of the forecast, formatted for the strip
+     */
+    static String[] formatForecast(Context context, ForecastPayload forecast, boolean metric) {
+        String[] temps = new String[forecast.size()];
+        for (int i = 0; i < temps.length; i++) {
+            temps[i] = context.getString(R.string.format_forecast_temperatures,
+                    formatTemperature(context, forecast.highs[i], metric),
+                    formatTemperature(context, forecast.lows[i], metric));
+        }
+        return temps;
+    }
+
+    /**
+     * Decodes small art for each day of the forecast, once for each distinct condition. Does
+     * disk I/O, so should not be called from the main thread when it can be avoided.
+     *
+     * @return the art of each day, with null entries for unknown conditions
+     */
+    static Bitmap[] decodeForecastArt(Resources resources, ForecastPayload forecast) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inSampleSize = FORECAST_ART_SAMPLE_SIZE;
+        SparseArray<Bitmap> decoded = new SparseArray<>();
+        Bitmap[] art = new Bitmap[forecast.size()];
+        for (int i = 0; i < art.length; i++) {
+            int artResource = getArtResource(forecast.weatherIds[i]);
+            if (artResource == -1) {
+                continue;
+            }
+            Bitmap bitmap = decoded.get(artResource);
+            if (bitmap == null) {
+                bitmap = BitmapFactory.decodeResource(resources, artResource, options);
+                decoded.put(artResource, bitmap);
+            }
+            art[i] = bitmap;
+        }
+        return art;
+    }
+}
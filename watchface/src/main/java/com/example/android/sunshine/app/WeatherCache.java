@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.example.android.sunshine.core.ForecastPayload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * The last weather the phone sent, kept in a small file so that a new engine can draw it straight
+ * away instead of showing placeholders until the phone answers.
+ *
+ * File layout: version, time received, the phone's version of the data, high and low
+ * temperature, condition id, art key, then custom art exactly as it arrived from the phone (an
+ * encoded PNG, far smaller than the decoded pixels), with a length of 0 when the face shows its
+ * own art for the condition. That art is decoded from resources again on read rather than
+ * stored. Last come the units and the packed {@link ForecastPayload}, also as it arrived, with a
+ * length of 0 when there was none.
+ */
+final class WeatherCache {
+    private static final String TAG = "WeatherCache";
+    private static final String FILE_NAME = "weather_cache.bin";
+    private static final int VERSION = 4;
+
+    final long receivedAt;
+    final long dataVersion;
+    final String highTemp;
+    final String lowTemp;
+    final int weatherId;
+    final String artKey;
+    final Bitmap art;
+
+    final byte[] artBytes;
+    final boolean metric;
+    final byte[] forecast;
+
+    private WeatherCache(long receivedAt, long dataVersion, String highTemp, String lowTemp,
+                         int weatherId, String artKey, Bitmap art, byte[] artBytes,
+                         boolean metric, byte[] forecast) {
+        this.receivedAt = receivedAt;
+        this.dataVersion = dataVersion;
+        this.highTemp = highTemp;
+        this.lowTemp = lowTemp;
+        this.weatherId = weatherId;
+        this.artKey = artKey;
+        this.art = art;
+        this.artBytes = artBytes;
+        this.metric = metric;
+        this.forecast = forecast;
+    }
+
+    /**
+     * Reads and decodes the cached weather. The file is a few kilobytes, so this is quick enough
+     * for the engine to do before its first frame.
+     *
+     * @return the cached weather, or null if there is none or it can't be read
+     */
+    static WeatherCache read(Context context) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            long receivedAt = in.readLong();
+            long dataVersion = in.readLong();
+            String highTemp = in.readUTF();
+            String lowTemp = in.readUTF();
+            int weatherId = in.readInt();
+            String artKey = in.readUTF();
+            byte[] artBytes = readBytes(in, file.length());
+            boolean metric = in.readBoolean();
+            byte[] forecast = readBytes(in, ForecastPayload.MAX_BYTES);
+            Bitmap art;
+            if (artBytes.length > 0) {
+                art = BitmapFactory.decodeByteArray(artBytes, 0, artBytes.length);
+            } else {
+                artBytes = null;
+                int artResource = WeatherArt.getArtResource(weatherId);
+                art = artResource == -1
+                        ? null : BitmapFactory.decodeResource(context.getResources(), artResource);
+            }
+            return new WeatherCache(receivedAt, dataVersion, emptyToNull(highTemp),
+                    emptyToNull(lowTemp), weatherId, emptyToNull(artKey), art, artBytes, metric,
+                    forecast.length == 0 ? null : forecast);
+        } catch (IOException e) {
+            Log.e(TAG, "Ignoring unreadable weather cache", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Replaces the cached weather. Does disk I/O, so should not be called from the main thread.
+     *
+     * @param weatherId the condition, or -1 if unknown
+     * @param artBytes the encoded custom art, or null if the condition's own art is shown
+     * @param forecast the packed forecast, or null if there is none
+     */
+    static void write(Context context, long receivedAt, long dataVersion, String highTemp,
+                      String lowTemp, int weatherId, String artKey, byte[] artBytes,
+                      boolean metric, byte[] forecast) {
+        File file = getFile(context);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(VERSION);
+            out.writeLong(receivedAt);
+            out.writeLong(dataVersion);
+            out.writeUTF(highTemp == null ? "" : highTemp);
+            out.writeUTF(lowTemp == null ? "" : lowTemp);
+            out.writeInt(weatherId);
+            out.writeUTF(artKey == null ? "" : artKey);
+            writeBytes(out, artBytes);
+            out.writeBoolean(metric);
+            writeBytes(out, forecast);
+            out.close();
+            out = null;
+            // Readers only ever see a complete file
+            if (!tmpFile.renameTo(file)) {
+                Log.w(TAG, "Unable to replace " + file);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing weather cache", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Records that the cached weather was confirmed up to date at the time, so that a new engine
+     * doesn't think it stale. Only the time is rewritten, in place. Does disk I/O, so should not
+     * be called from the main thread.
+     */
+    static void setReceivedAt(Context context, long receivedAt) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return;
+        }
+        RandomAccessFile out = null;
+        try {
+            out = new RandomAccessFile(file, "rw");
+            if (out.readInt() != VERSION) {
+                return;
+            }
+            // The time received follows the version
+            out.writeLong(receivedAt);
+        } catch (IOException e) {
+            Log.e(TAG, "Error updating weather cache", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Reads a stream to the end and closes it.
+     */
+    static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in, long maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Bad length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing stream", e);
+            }
+        }
+    }
+}
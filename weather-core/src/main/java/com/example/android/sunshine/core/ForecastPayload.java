@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The coming days' forecast, packed into the byte array the phone sends the watch face for its
+ * forecast strip. Both sides use this class, so the layout can't drift between them.
+ *
+ * Layout, big-endian: version (byte), day count (byte), first day (int, days since the epoch in
+ * the phone's time zone), then for each day its offset from the first day (byte), condition id
+ * (short), low and high in tenths of a degree Celsius (shorts). A week is 55 bytes.
+ */
+public final class ForecastPayload {
+    public static final int VERSION = 1;
+    public static final int MAX_DAYS = 7;
+    public static final int HEADER_BYTES = 6;
+    public static final int DAY_BYTES = 7;
+    public static final int MAX_BYTES = HEADER_BYTES + MAX_DAYS * DAY_BYTES;
+
+    public final int[] epochDays;
+    public final int[] weatherIds;
+    public final float[] lows;
+    public final float[] highs;
+
+    private ForecastPayload(int days) {
+        epochDays = new int[days];
+        weatherIds = new int[days];
+        lows = new float[days];
+        highs = new float[days];
+    }
+
+    public int size() {
+        return epochDays.length;
+    }
+
+    /**
+     * @param epochDays days of the forecast as counted by {@link WeatherDates#toEpochDay},
+     *                  ascending; only the first {@link #MAX_DAYS} are packed
+     * @param weatherIds condition ids of the days
+     * @param lows low temperatures in Celsius
+     * @param highs high temperatures in Celsius
+     * @param count how many of the array entries are filled in
+     */
+    public static byte[] encode(int[] epochDays, int[] weatherIds, double[] lows,
+                                double[] highs, int count) {
+        count = Math.min(count, MAX_DAYS);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + count * DAY_BYTES);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) count);
+        int firstDay = count == 0 ? 0 : epochDays[0];
+        buffer.putInt(firstDay);
+        for (int i = 0; i < count; i++) {
+            buffer.put((byte) (epochDays[i] - firstDay));
+            buffer.putShort((short) weatherIds[i]);
+            buffer.putShort(toTenths(lows[i]));
+            buffer.putShort(toTenths(highs[i]));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return the forecast, or null if the payload is missing, from a different version, or
+     * larger than a week's worth
+     */
+    public static ForecastPayload decode(byte[] payload) {
+        if (payload == null || payload.length < HEADER_BYTES || payload.length > MAX_BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int version = buffer.get();
+        int days = buffer.get();
+        if (version != VERSION || days < 0 || days > MAX_DAYS
+                || payload.length != HEADER_BYTES + days * DAY_BYTES) {
+            return null;
+        }
+        ForecastPayload forecast = new ForecastPayload(days);
+        int firstDay = buffer.getInt();
+        for (int i = 0; i < days; i++) {
+            forecast.epochDays[i] = firstDay + buffer.get();
+            forecast.weatherIds[i] = buffer.getShort();
+            forecast.lows[i] = buffer.getShort() / 10f;
+            forecast.highs[i] = buffer.getShort() / 10f;
+        }
+        return forecast;
+    }
+
+    private static short toTenths(double celsius) {
+        return (short) Math.round(celsius * 10);
+    }
+}
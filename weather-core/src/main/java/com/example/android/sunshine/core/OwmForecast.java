@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A daily forecast as returned by the OpenWeatherMap API, with just the fields Sunshine stores.
+ * The days are in order, the first being today where the city is.
+ */
+public final class OwmForecast {
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_NOT_FOUND = 1;
+    public static final int STATUS_SERVER_ERROR = 2;
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /** One of the STATUS constants; the other fields are only filled in if it is OK. */
+    public final int status;
+    public final String cityName;
+    public final double latitude;
+    public final double longitude;
+    public final List<Day> days;
+
+    public static final class Day {
+        public final int weatherId;
+        public final String description;
+        public final double high;
+        public final double low;
+        public final int humidity;
+        public final double pressure;
+        public final double windSpeed;
+        public final double windDirection;
+
+        Day(int weatherId, String description, double high, double low, int humidity,
+            double pressure, double windSpeed, double windDirection) {
+            this.weatherId = weatherId;
+            this.description = description;
+            this.high = high;
+            this.low = low;
+            this.humidity = humidity;
+            this.pressure = pressure;
+            this.windSpeed = windSpeed;
+            this.windDirection = windDirection;
+        }
+    }
+
+    private OwmForecast(int status, String cityName, double latitude, double longitude,
+                        List<Day> days) {
+        this.status = status;
+        this.cityName = cityName;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.days = days;
+    }
+
+    /**
+     * @param forecastJsonStr the complete forecast in JSON format
+     * @throws JSONException if the forecast is malformed or misses a field
+     */
+    public static OwmForecast parse(String forecastJsonStr) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            switch (forecastJson.getInt(OWM_MESSAGE_CODE)) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    return failed(STATUS_NOT_FOUND);
+                default:
+                    return failed(STATUS_SERVER_ERROR);
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        String cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        List<Day> days = new ArrayList<Day>(weatherArray.length());
+        for (int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+
+            days.add(new Day(
+                    weatherObject.getInt(OWM_WEATHER_ID),
+                    weatherObject.getString(OWM_DESCRIPTION),
+                    temperatureObject.getDouble(OWM_MAX),
+                    temperatureObject.getDouble(OWM_MIN),
+                    dayForecast.getInt(OWM_HUMIDITY),
+                    dayForecast.getDouble(OWM_PRESSURE),
+                    dayForecast.getDouble(OWM_WINDSPEED),
+                    dayForecast.getDouble(OWM_WIND_DIRECTION)));
+        }
+        return new OwmForecast(STATUS_OK, cityName, cityLatitude, cityLongitude,
+                Collections.unmodifiableList(days));
+    }
+
+    private static OwmForecast failed(int status) {
+        return new OwmForecast(status, null, 0, 0, Collections.<Day>emptyList());
+    }
+}
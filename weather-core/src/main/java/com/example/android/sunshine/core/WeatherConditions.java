@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Groups OpenWeatherMap condition codes by the art Sunshine shows for them. The phone and the
+ * watch map the groups to their own resources, so that they always agree on which art a
+ * condition gets.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    public static final int MIN_CODE = 200;
+    public static final int MAX_CODE = 962;
+
+    // The art groups.  Arrays indexed by group must stay in the order of these constants.
+    public static final int NO_GROUP = -1;
+    public static final int GROUP_STORM = 0;
+    public static final int GROUP_LIGHT_RAIN = 1;
+    public static final int GROUP_RAIN = 2;
+    public static final int GROUP_SNOW = 3;
+    public static final int GROUP_FOG = 4;
+    public static final int GROUP_CLEAR = 5;
+    public static final int GROUP_LIGHT_CLOUDS = 6;
+    public static final int GROUP_CLOUDS = 7;
+    // Tornado shares the storm art but has its own Muzei image
+    public static final int GROUP_TORNADO = 8;
+    public static final int GROUP_COUNT = 9;
+
+    // Names substituted into the art pack URL format, e.g. "art_%s.png"
+    private static final String[] GROUP_ART_NAMES = {
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "clear",
+            "light_clouds",
+            "clouds",
+            "storm"
+    };
+
+    private static final String[] GROUP_IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg"
+    };
+
+    // Per-code group, indexed by (code - MIN_CODE)
+    private static final byte[] sGroups = new byte[MAX_CODE - MIN_CODE + 1];
+
+    // Art URLs expanded for the art pack format they were built from.  Swapped as a pair
+    // whenever the user picks a different art pack.
+    private static volatile ArtUrls sArtUrls;
+
+    static {
+        Arrays.fill(sGroups, (byte) NO_GROUP);
+
+        // The order here matters: a code keeps the first group it is assigned, so this mirrors
+        // the precedence the original if/else chain had (761 is fog, not tornado).
+        mapGroup(200, 232, GROUP_STORM);
+        mapGroup(300, 321, GROUP_LIGHT_RAIN);
+        mapGroup(500, 504, GROUP_RAIN);
+        mapGroup(511, 511, GROUP_SNOW);
+        mapGroup(520, 531, GROUP_RAIN);
+        mapGroup(600, 622, GROUP_SNOW);
+        mapGroup(701, 761, GROUP_FOG);
+        mapGroup(761, 761, GROUP_TORNADO);
+        mapGroup(781, 781, GROUP_TORNADO);
+        mapGroup(800, 800, GROUP_CLEAR);
+        mapGroup(801, 801, GROUP_LIGHT_CLOUDS);
+        mapGroup(802, 804, GROUP_CLOUDS);
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void mapGroup(int fromCode, int toCode, int group) {
+        for (int code = fromCode; code <= toCode; code++) {
+            if (sGroups[code - MIN_CODE] == NO_GROUP) {
+                sGroups[code - MIN_CODE] = (byte) group;
+            }
+        }
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the art group for the condition, or {@link #NO_GROUP} if there is none.
+     */
+    public static int getGroup(int weatherId) {
+        if (weatherId < MIN_CODE || weatherId > MAX_CODE) {
+            return NO_GROUP;
+        }
+        return sGroups[weatherId - MIN_CODE];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return url of the Muzei image for the condition. null if no relation is found.
+     */
+    public static String getImageUrl(int weatherId) {
+        int group = getGroup(weatherId);
+        return group == NO_GROUP ? null : GROUP_IMAGE_URLS[group];
+    }
+
+    /**
+     * Returns the art URL for a condition in the given art pack.  The URLs for every group are
+     * expanded once per art pack, so this only formats strings again after the pack changes.
+     *
+     * @param artPackFormat the art pack URL format, with a single %s for the art name
+     * @param weatherId from OpenWeatherMap API response
+     * @return url for the corresponding weather artwork. null if no relation is found.
+     */
+    public static String getArtUrl(String artPackFormat, int weatherId) {
+        int group = getGroup(weatherId);
+        if (group == NO_GROUP) {
+            return null;
+        }
+        ArtUrls artUrls = sArtUrls;
+        if (artUrls == null || !artUrls.format.equals(artPackFormat)) {
+            artUrls = new ArtUrls(artPackFormat);
+            sArtUrls = artUrls;
+        }
+        return artUrls.urls[group];
+    }
+
+    private static final class ArtUrls {
+        final String format;
+        final String[] urls = new String[GROUP_COUNT];
+
+        ArtUrls(String format) {
+            this.format = format;
+            for (int i = 0; i < GROUP_COUNT; i++) {
+                urls[i] = String.format(Locale.US, format, GROUP_ART_NAMES[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.TimeZone;
+
+/**
+ * The day arithmetic weather dates are stored with. A date is the instant the day starts in the
+ * user's time zone, so that the forecast for a day can be looked up by exact date.
+ *
+ * Everything here is offset arithmetic on the time zone, without allocating a calendar, since
+ * dates are normalized for every row the provider writes.
+ */
+public final class WeatherDates {
+
+    public static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private WeatherDates() {
+    }
+
+    /**
+     * @return the start of the day the date falls on in the time zone
+     */
+    public static long normalizeDate(long date, TimeZone timeZone) {
+        long localDate = date + timeZone.getOffset(date);
+        long localMidnight = localDate - floorMod(localDate, DAY_IN_MILLIS);
+        // Midnight usually has the date's offset, unless a DST change came in between
+        long midnight = localMidnight - timeZone.getOffset(date);
+        int offset = timeZone.getOffset(midnight);
+        if (midnight + offset != localMidnight) {
+            long adjusted = localMidnight - offset;
+            if (adjusted + timeZone.getOffset(adjusted) == localMidnight) {
+                midnight = adjusted;
+            } else {
+                // Midnight was skipped by the change, so the day starts when the gap ends
+                midnight = Math.max(midnight, adjusted);
+            }
+        }
+        return midnight;
+    }
+
+    /**
+     * @param startOfDay a normalized date
+     * @return the start of the day that many days later, or earlier if negative
+     */
+    public static long addDays(long startOfDay, int days, TimeZone timeZone) {
+        // Noon stays on the right day whatever DST changes come in between
+        return normalizeDate(startOfDay + days * DAY_IN_MILLIS + DAY_IN_MILLIS / 2, timeZone);
+    }
+
+    /**
+     * @return the days since the epoch, counted the way the user sees them in the time zone
+     */
+    public static int toEpochDay(long date, TimeZone timeZone) {
+        long localDate = date + timeZone.getOffset(date);
+        return (int) ((localDate - floorMod(localDate, DAY_IN_MILLIS)) / DAY_IN_MILLIS);
+    }
+
+    private static long floorMod(long x, long y) {
+        long mod = x % y;
+        return mod < 0 ? mod + y : mod;
+    }
+}
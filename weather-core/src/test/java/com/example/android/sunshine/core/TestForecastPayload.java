@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import junit.framework.TestCase;
+
+/*
+    Packs forecasts the way the phone does and reads them back the way the watch face does, and
+    checks that a week fits the size budget.
+ */
+public class TestForecastPayload extends TestCase {
+
+    private static final int FIRST_DAY = 17000;
+
+    public void testRoundTrip() {
+        ForecastPayload forecast = ForecastPayload.decode(encode(3));
+        assertNotNull(forecast);
+        assertEquals(3, forecast.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(FIRST_DAY + i, forecast.epochDays[i]);
+            assertEquals(800 + i, forecast.weatherIds[i]);
+            assertEquals(-4.5f + i, forecast.lows[i], 0.01f);
+            assertEquals(12.3f + i, forecast.highs[i], 0.01f);
+        }
+    }
+
+    public void testEncodesAtMostAWeek() {
+        byte[] week = encode(ForecastPayload.MAX_DAYS + 3);
+        assertEquals("Error: a week is " + week.length + " bytes",
+                ForecastPayload.MAX_BYTES, week.length);
+        assertEquals(ForecastPayload.MAX_DAYS, ForecastPayload.decode(week).size());
+    }
+
+    public void testEmptyForecast() {
+        ForecastPayload forecast = ForecastPayload.decode(encode(0));
+        assertNotNull(forecast);
+        assertEquals(0, forecast.size());
+    }
+
+    public void testRejectsBadPayloads() {
+        assertNull(ForecastPayload.decode(null));
+        assertNull("Error: accepted a payload without a header",
+                ForecastPayload.decode(new byte[ForecastPayload.HEADER_BYTES - 1]));
+
+        byte[] otherVersion = encode(3);
+        otherVersion[0] = ForecastPayload.VERSION + 1;
+        assertNull("Error: accepted an unknown version", ForecastPayload.decode(otherVersion));
+
+        byte[] truncated = encode(3);
+        byte[] shorter = new byte[truncated.length - 1];
+        System.arraycopy(truncated, 0, shorter, 0, shorter.length);
+        assertNull("Error: accepted a truncated payload", ForecastPayload.decode(shorter));
+    }
+
+    static byte[] encode(int days) {
+        int[] epochDays = new int[days];
+        int[] weatherIds = new int[days];
+        double[] lows = new double[days];
+        double[] highs = new double[days];
+        for (int i = 0; i < days; i++) {
+            epochDays[i] = FIRST_DAY + i;
+            weatherIds[i] = 800 + i;
+            lows[i] = -4.5 + i;
+            highs[i] = 12.3 + i;
+        }
+        return ForecastPayload.encode(epochDays, weatherIds, lows, highs, days);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import junit.framework.TestCase;
+
+import org.json.JSONException;
+
+/*
+    Parses responses shaped like the OpenWeatherMap daily forecast.
+ */
+public class TestOwmForecast extends TestCase {
+
+    private static final String DAY_JSON = "{\"dt\":1419033600,"
+            + "\"temp\":{\"day\":11.2,\"min\":%d.5,\"max\":%d.25,\"night\":6.1},"
+            + "\"pressure\":1021.5,\"humidity\":%d,"
+            + "\"weather\":[{\"id\":%d,\"main\":\"Clouds\",\"description\":\"broken clouds\","
+            + "\"icon\":\"04d\"}],"
+            + "\"speed\":5.5,\"deg\":270}";
+
+    public void testParse() throws JSONException {
+        OwmForecast forecast = OwmForecast.parse(forecastJson(3));
+        assertEquals(OwmForecast.STATUS_OK, forecast.status);
+        assertEquals("Mountain View", forecast.cityName);
+        assertEquals(37.39, forecast.latitude, 1e-9);
+        assertEquals(-122.08, forecast.longitude, 1e-9);
+        assertEquals(3, forecast.days.size());
+        for (int i = 0; i < 3; i++) {
+            OwmForecast.Day day = forecast.days.get(i);
+            assertEquals(800 + i, day.weatherId);
+            assertEquals("Clouds", day.description);
+            assertEquals(i + 0.5, day.low, 1e-9);
+            assertEquals(10 + i + 0.25, day.high, 1e-9);
+            assertEquals(70 + i, day.humidity);
+            assertEquals(1021.5, day.pressure, 1e-9);
+            assertEquals(5.5, day.windSpeed, 1e-9);
+            assertEquals(270, day.windDirection, 1e-9);
+        }
+    }
+
+    public void testErrorCodes() throws JSONException {
+        assertEquals(OwmForecast.STATUS_NOT_FOUND,
+                OwmForecast.parse("{\"cod\":\"404\",\"message\":\"Error: Not found city\"}")
+                        .status);
+        assertEquals(OwmForecast.STATUS_SERVER_ERROR,
+                OwmForecast.parse("{\"cod\":500}").status);
+        OwmForecast notFound = OwmForecast.parse("{\"cod\":404}");
+        assertNull(notFound.cityName);
+        assertTrue("Error: a failed forecast has days", notFound.days.isEmpty());
+    }
+
+    public void testMissingCodeIsOk() throws JSONException {
+        String json = forecastJson(1).replace("\"cod\":\"200\",", "");
+        assertEquals(OwmForecast.STATUS_OK, OwmForecast.parse(json).status);
+    }
+
+    public void testMalformedForecast() {
+        try {
+            OwmForecast.parse("{\"cod\":\"200\",\"list\":[]}");
+            fail("Error: parsed a forecast without a city");
+        } catch (JSONException expected) {
+        }
+        try {
+            OwmForecast.parse("<html>");
+            fail("Error: parsed something that isn't JSON");
+        } catch (JSONException expected) {
+        }
+    }
+
+    static String forecastJson(int days) {
+        StringBuilder json = new StringBuilder("{\"city\":{\"id\":5375480,"
+                + "\"name\":\"Mountain View\",\"coord\":{\"lon\":-122.08,\"lat\":37.39},"
+                + "\"country\":\"US\"},\"cod\":\"200\",\"message\":0.01,\"cnt\":")
+                .append(days).append(",\"list\":[");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(DAY_JSON, i, 10 + i, 70 + i, 800 + i));
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import junit.framework.TestCase;
+
+/*
+    Checks the art groups the phone and the watch share, and that art URLs follow art pack
+    changes.
+ */
+public class TestWeatherConditions extends TestCase {
+
+    private static final String TEST_ART_PACK = "http://example.com/art_%s.png";
+    private static final String OTHER_ART_PACK = "http://example.com/other/%s.png";
+
+    public void testGroups() {
+        assertEquals(WeatherConditions.GROUP_STORM, WeatherConditions.getGroup(211));
+        assertEquals(WeatherConditions.GROUP_LIGHT_RAIN, WeatherConditions.getGroup(300));
+        assertEquals(WeatherConditions.GROUP_RAIN, WeatherConditions.getGroup(502));
+        assertEquals(WeatherConditions.GROUP_SNOW, WeatherConditions.getGroup(511));
+        assertEquals(WeatherConditions.GROUP_RAIN, WeatherConditions.getGroup(520));
+        assertEquals(WeatherConditions.GROUP_SNOW, WeatherConditions.getGroup(622));
+        assertEquals("Error: 761 should be fog, not tornado",
+                WeatherConditions.GROUP_FOG, WeatherConditions.getGroup(761));
+        assertEquals(WeatherConditions.GROUP_TORNADO, WeatherConditions.getGroup(781));
+        assertEquals(WeatherConditions.GROUP_CLEAR, WeatherConditions.getGroup(800));
+        assertEquals(WeatherConditions.GROUP_LIGHT_CLOUDS, WeatherConditions.getGroup(801));
+        assertEquals(WeatherConditions.GROUP_CLOUDS, WeatherConditions.getGroup(804));
+    }
+
+    public void testCodesWithoutGroup() {
+        int[] codes = {-1, 0, 199, 233, 505, 762, 771, 805, 900, 962, 963, 1000};
+        for (int code : codes) {
+            assertEquals("Error: code " + code + " has a group",
+                    WeatherConditions.NO_GROUP, WeatherConditions.getGroup(code));
+            assertNull("Error: code " + code + " has an image",
+                    WeatherConditions.getImageUrl(code));
+            assertNull("Error: code " + code + " has art",
+                    WeatherConditions.getArtUrl(TEST_ART_PACK, code));
+        }
+    }
+
+    public void testArtUrlsFollowArtPackChanges() {
+        assertEquals("http://example.com/art_storm.png",
+                WeatherConditions.getArtUrl(TEST_ART_PACK, 781));
+        assertEquals("http://example.com/other/light_clouds.png",
+                WeatherConditions.getArtUrl(OTHER_ART_PACK, 801));
+        assertEquals("http://example.com/art_fog.png",
+                WeatherConditions.getArtUrl(TEST_ART_PACK, 761));
+    }
+
+    public void testTornadoHasItsOwnImage() {
+        assertNotNull(WeatherConditions.getImageUrl(211));
+        assertFalse("Error: tornado shares the storm image",
+                WeatherConditions.getImageUrl(211).equals(WeatherConditions.getImageUrl(781)));
+    }
+}
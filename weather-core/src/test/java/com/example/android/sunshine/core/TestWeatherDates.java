@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import junit.framework.TestCase;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/*
+    Checks the day arithmetic against java.util.Calendar across DST changes, including zones
+    where a change skips midnight or moves the clock by half an hour.
+ */
+public class TestWeatherDates extends TestCase {
+
+    private static final String[] TIME_ZONES = {
+            "UTC",
+            "America/Los_Angeles",
+            "America/Sao_Paulo",
+            "Europe/London",
+            "Asia/Kolkata",
+            "Australia/Lord_Howe"
+    };
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+    // 2014-01-01T00:00:00Z, and the three years after it
+    private static final long FIRST_DATE = 1388534400000L;
+    private static final int DAYS = 3 * 365;
+
+    public void testNormalizeDateMatchesCalendar() {
+        for (String id : TIME_ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            for (long date = FIRST_DATE; date < FIRST_DATE + DAYS * WeatherDates.DAY_IN_MILLIS;
+                    date += HOUR_IN_MILLIS) {
+                assertEquals("Error: wrong start of day for " + date + " in " + id,
+                        referenceStartOfDay(date, timeZone),
+                        WeatherDates.normalizeDate(date, timeZone));
+            }
+        }
+    }
+
+    public void testNormalizeDateIsIdempotent() {
+        for (String id : TIME_ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            for (long date = FIRST_DATE; date < FIRST_DATE + DAYS * WeatherDates.DAY_IN_MILLIS;
+                    date += HOUR_IN_MILLIS) {
+                long startOfDay = WeatherDates.normalizeDate(date, timeZone);
+                assertEquals("Error: normalizing " + startOfDay + " again in " + id
+                        + " changed it",
+                        startOfDay, WeatherDates.normalizeDate(startOfDay, timeZone));
+            }
+        }
+    }
+
+    public void testAddDays() {
+        for (String id : TIME_ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            long startOfDay = WeatherDates.normalizeDate(FIRST_DATE, timeZone);
+            Calendar calendar = Calendar.getInstance(timeZone);
+            calendar.setTimeInMillis(startOfDay);
+            for (int i = 0; i < DAYS; i++) {
+                assertEquals("Error: wrong date " + i + " days after " + startOfDay + " in " + id,
+                        referenceStartOfDay(calendar.getTimeInMillis(), timeZone),
+                        WeatherDates.addDays(startOfDay, i, timeZone));
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            assertEquals("Error: the day before isn't the previous day in " + id,
+                    WeatherDates.normalizeDate(startOfDay - 1, timeZone),
+                    WeatherDates.addDays(startOfDay, -1, timeZone));
+        }
+    }
+
+    public void testEpochDaysAreConsecutive() {
+        for (String id : TIME_ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            long startOfDay = WeatherDates.normalizeDate(FIRST_DATE, timeZone);
+            int firstDay = WeatherDates.toEpochDay(startOfDay, timeZone);
+            for (int i = 0; i < DAYS; i++) {
+                long date = WeatherDates.addDays(startOfDay, i, timeZone);
+                assertEquals("Error: wrong epoch day for " + date + " in " + id,
+                        firstDay + i, WeatherDates.toEpochDay(date, timeZone));
+            }
+        }
+        assertEquals(0, WeatherDates.toEpochDay(0, TimeZone.getTimeZone("UTC")));
+        assertEquals(-1, WeatherDates.toEpochDay(-1, TimeZone.getTimeZone("UTC")));
+    }
+
+    private static long referenceStartOfDay(long date, TimeZone timeZone) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+}
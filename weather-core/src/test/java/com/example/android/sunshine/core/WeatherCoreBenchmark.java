@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.json.JSONException;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/*
+    Times the hot paths of the shared code on the build machine and prints the results.  Kept out
+    of the tests, since timings there fail on a busy machine:
+    ./gradlew :weather-core:benchmark
+ */
+public final class WeatherCoreBenchmark {
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+    private static final long FIRST_DATE = 1388534400000L;
+    private static final String ART_PACK = "http://example.com/art_%s.png";
+
+    // Every result is added in here, so that the JIT can't drop the calls being timed
+    private static long sSink;
+
+    private WeatherCoreBenchmark() {
+    }
+
+    public static void main(String[] args) throws JSONException {
+        final TimeZone timeZone = TimeZone.getTimeZone("America/Los_Angeles");
+        time("normalizeDate", 100 * 1000, new Task() {
+            @Override
+            public long run(int i) {
+                return WeatherDates.normalizeDate(FIRST_DATE + i * HOUR_IN_MILLIS, timeZone);
+            }
+        });
+
+        final byte[] week = TestForecastPayload.encode(ForecastPayload.MAX_DAYS);
+        time("ForecastPayload.decode", 100 * 1000, new Task() {
+            @Override
+            public long run(int i) {
+                return ForecastPayload.decode(week).epochDays[i % ForecastPayload.MAX_DAYS];
+            }
+        });
+
+        final String weekJson = TestOwmForecast.forecastJson(7);
+        time("OwmForecast.parse", 1000, new Task() {
+            @Override
+            public long run(int i) throws JSONException {
+                return OwmForecast.parse(weekJson).days.size();
+            }
+        });
+
+        // The condition lookups, against the range chains Utility ran before the table
+        time("WeatherConditions.getGroup", 1000 * 1000, new Task() {
+            @Override
+            public long run(int i) {
+                return WeatherConditions.getGroup(toCode(i));
+            }
+        });
+        time("range chain group", 1000 * 1000, new Task() {
+            @Override
+            public long run(int i) {
+                return rangeChainGroup(toCode(i));
+            }
+        });
+        time("WeatherConditions.getArtUrl", 1000 * 1000, new Task() {
+            @Override
+            public long run(int i) {
+                String url = WeatherConditions.getArtUrl(ART_PACK, toCode(i));
+                return url != null ? url.length() : 0;
+            }
+        });
+        time("range chain art url", 1000 * 1000, new Task() {
+            @Override
+            public long run(int i) {
+                String url = rangeChainArtUrl(ART_PACK, toCode(i));
+                return url != null ? url.length() : 0;
+            }
+        });
+
+        // Printed so that the results are used
+        System.out.println("(checksum " + sSink + ")");
+    }
+
+    /**
+     * @return the codes from 200 to 804 in turn, which cover every branch of the chains
+     */
+    private static int toCode(int i) {
+        return 200 + i % 605;
+    }
+
+    private static int rangeChainGroup(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return WeatherConditions.GROUP_STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return WeatherConditions.GROUP_LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return WeatherConditions.GROUP_RAIN;
+        } else if (weatherId == 511) {
+            return WeatherConditions.GROUP_SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return WeatherConditions.GROUP_RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return WeatherConditions.GROUP_SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return WeatherConditions.GROUP_FOG;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return WeatherConditions.GROUP_TORNADO;
+        } else if (weatherId == 800) {
+            return WeatherConditions.GROUP_CLEAR;
+        } else if (weatherId == 801) {
+            return WeatherConditions.GROUP_LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return WeatherConditions.GROUP_CLOUDS;
+        }
+        return WeatherConditions.NO_GROUP;
+    }
+
+    private static String rangeChainArtUrl(String formatArtUrl, int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, formatArtUrl, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, formatArtUrl, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, formatArtUrl, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, formatArtUrl, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, formatArtUrl, "clouds");
+        }
+        return null;
+    }
+
+    private interface Task {
+        long run(int i) throws JSONException;
+    }
+
+    private static void time(String name, int runs, Task task) throws JSONException {
+        // Warm up, so that the timed runs are compiled
+        long sink = 0;
+        for (int i = 0; i < runs; i++) {
+            sink += task.run(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            sink += task.run(i);
+        }
+        long nanosPerRun = (System.nanoTime() - start) / runs;
+        sSink += sink;
+        System.out.println(name + ": " + nanosPerRun + " ns/op");
+    }
+}